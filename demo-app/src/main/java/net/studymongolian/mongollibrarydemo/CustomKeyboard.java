@@ -13,7 +13,7 @@ import net.studymongolian.mongollibrary.MongolCode;
 public class CustomKeyboard extends Keyboard {
 
     // name to use in the keyboard popup chooser
-    private static final String DISPLAY_NAME = "ᠲᠤᠭ᠎ᠠ";
+    public static final String DISPLAY_NAME = "ᠲᠤᠭ᠎ᠠ";
 
     // Row 1
     protected KeyText mKey7;
@@ -1,5 +1,6 @@
 package net.studymongolian.mongollibrarydemo;
 
+import android.content.Context;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
 import android.widget.EditText;
@@ -45,16 +46,42 @@ public class KeyboardActivity extends AppCompatActivity {
 //        Keyboard qwerty = new KeyboardQwerty(this, keyboardStyle);
 //        Keyboard custom = new CustomKeyboard(this, keyboardStyle);
 
-        // keyboards to include (default style)
-        Keyboard aeiou = new KeyboardAeiou(this);
-        Keyboard qwerty = new KeyboardQwerty(this);
-        Keyboard custom = new CustomKeyboard(this);
-
-        // add keyboards to the IME container
+        // add keyboards to the IME container (default style)
+        // They are only created when they are first shown.
         ImeContainer imeContainer = findViewById(R.id.keyboard);
-        imeContainer.addKeyboard(aeiou); // first one is the default
-        imeContainer.addKeyboard(qwerty);
-        imeContainer.addKeyboard(custom);
+        imeContainer.addKeyboard(new ImeContainer.KeyboardFactory() { // first one is the default
+            @Override
+            public String getDisplayName() {
+                return KeyboardAeiou.DISPLAY_NAME;
+            }
+
+            @Override
+            public Keyboard createKeyboard(Context context) {
+                return new KeyboardAeiou(context);
+            }
+        });
+        imeContainer.addKeyboard(new ImeContainer.KeyboardFactory() {
+            @Override
+            public String getDisplayName() {
+                return KeyboardQwerty.DISPLAY_NAME;
+            }
+
+            @Override
+            public Keyboard createKeyboard(Context context) {
+                return new KeyboardQwerty(context);
+            }
+        });
+        imeContainer.addKeyboard(new ImeContainer.KeyboardFactory() {
+            @Override
+            public String getDisplayName() {
+                return CustomKeyboard.DISPLAY_NAME;
+            }
+
+            @Override
+            public Keyboard createKeyboard(Context context) {
+                return new CustomKeyboard(context);
+            }
+        });
 
         // The MongolInputMethodManager handles communication between the keyboards and
         // the MongolEditText (or EditText).
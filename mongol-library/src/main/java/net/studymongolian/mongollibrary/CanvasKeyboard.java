@@ -0,0 +1,276 @@
+package net.studymongolian.mongollibrary;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.v4.view.ViewCompat;
+import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
+import android.support.v4.widget.ExploreByTouchHelper;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A keyboard whose keys are not child views. The keyboard lays them out,
+ * draws them on its own canvas and sends the touch events to them, so there
+ * is only one view to measure, lay out and draw.
+ *
+ * Subclasses add the keys in the same way as for Keyboard (addKey(), or
+ * setOnTouchListener() and addView()). Only keys can be added.
+ */
+public abstract class CanvasKeyboard extends Keyboard {
+
+    private static final int NO_KEY = -1;
+
+    private final List<Key> mKeys = new ArrayList<>();
+    private float[] mKeyRights;    // hit testing
+    private int[] mRowFirstKeys;   // hit testing
+    private float mRowHeight;
+    private boolean mNeedsKeyLayout = true;
+    private int mTouchedKey = NO_KEY;
+    private final Rect mClipBounds = new Rect();
+    private KeyAccessibilityHelper mAccessibilityHelper;
+
+    public CanvasKeyboard(Context context) {
+        super(context);
+        init();
+    }
+
+    public CanvasKeyboard(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    public CanvasKeyboard(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+
+    private void init() {
+        mAccessibilityHelper = new KeyAccessibilityHelper(this);
+        ViewCompat.setAccessibilityDelegate(this, mAccessibilityHelper);
+    }
+
+    // Every addView() ends up here. The key is kept instead of being added as
+    // a child, and its touch listener (set by addKey()) stays on the key.
+    @Override
+    public void addView(View child, int index, ViewGroup.LayoutParams params) {
+        if (!(child instanceof Key))
+            throw new IllegalArgumentException("CanvasKeyboard: only keys can be added");
+        Key key = (Key) child;
+        if (key.mCanvasKeyboard != null)
+            throw new IllegalStateException("CanvasKeyboard: the key was already added");
+        key.mCanvasKeyboard = this;
+        if (index < 0 || index > mKeys.size()) index = mKeys.size();
+        mKeys.add(index, key);
+        requestKeyLayout();
+    }
+
+    @Override
+    int getKeyCount() {
+        return mKeys.size();
+    }
+
+    @Override
+    Key getKeyAt(int index) {
+        return mKeys.get(index);
+    }
+
+    // called by a key when it changed in a way that needs it to be drawn again
+    void invalidateKey(Key key) {
+        invalidate(key.getLeft(), key.getTop(), key.getRight(), key.getBottom());
+        if (mAccessibilityHelper != null) {
+            mAccessibilityHelper.invalidateVirtualView(mKeys.indexOf(key));
+        }
+    }
+
+    // called by a key when it changed in a way that needs it to be measured again
+    void requestKeyLayout() {
+        mNeedsKeyLayout = true;
+        requestLayout();
+        invalidate();
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+
+        // the keys only need to be measured again if the keyboard size changed
+        if (!changed && !mNeedsKeyLayout) return;
+        mNeedsKeyLayout = false;
+
+        // this must be set by the subclass
+        int numberOfRows = mNumberOfKeysInRow.length;
+
+        final int totalWidth = getMeasuredWidth() - getPaddingLeft() - getPaddingRight();
+        final int totalHeight = getMeasuredHeight() - getPaddingTop() - getPaddingBottom();
+        mRowHeight = (float) totalHeight / numberOfRows;
+        mKeyRights = new float[mKeys.size()];
+        mRowFirstKeys = new int[numberOfRows];
+
+        float x = getPaddingLeft();
+        float y = getPaddingTop();
+        int keyIndex = 0;
+        for (int rowIndex = 0; rowIndex < numberOfRows; rowIndex++) {
+
+            mRowFirstKeys[rowIndex] = keyIndex;
+            int end = keyIndex + mNumberOfKeysInRow[rowIndex];
+            for (int i = keyIndex; i < end; i++) {
+                Key key = mKeys.get(keyIndex);
+
+                float keyWidth = totalWidth * mKeyWeights[keyIndex];
+                float keyHeight = totalHeight / numberOfRows;
+                key.measure(MeasureSpec.makeMeasureSpec((int) keyWidth, MeasureSpec.EXACTLY),
+                        MeasureSpec.makeMeasureSpec((int) keyHeight, MeasureSpec.EXACTLY));
+
+                key.layout((int) x, (int) y, (int) (x + keyWidth), (int) (y + keyHeight));
+                x += keyWidth;
+                mKeyRights[keyIndex] = x;
+                keyIndex++;
+            }
+
+            x = getPaddingLeft();
+            y += mRowHeight;
+        }
+
+        mAccessibilityHelper.invalidateRoot();
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        super.dispatchDraw(canvas);
+
+        canvas.getClipBounds(mClipBounds);
+        for (int i = 0; i < mKeys.size(); i++) {
+            Key key = mKeys.get(i);
+            if (key.getVisibility() != VISIBLE) continue;
+            if (!mClipBounds.intersects(key.getLeft(), key.getTop(), key.getRight(), key.getBottom()))
+                continue;
+            canvas.save();
+            canvas.translate(key.getLeft(), key.getTop());
+            // draw() rather than onDraw() so that backgrounds and drawables are drawn, too
+            key.draw(canvas);
+            canvas.restore();
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        final int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_DOWN) {
+            mTouchedKey = getKeyIndexAt(event.getX(), event.getY());
+        }
+        if (mTouchedKey == NO_KEY) return false;
+
+        // the key gets all of the events until the touch ends, like a child view would
+        final Key key = mKeys.get(mTouchedKey);
+        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            mTouchedKey = NO_KEY;
+        }
+        dispatchTouchEventToKey(key, event);
+        return true;
+    }
+
+    private static void dispatchTouchEventToKey(Key key, MotionEvent event) {
+        event.offsetLocation(-key.getLeft(), -key.getTop());
+        key.dispatchTouchEvent(event);
+        event.offsetLocation(key.getLeft(), key.getTop());
+    }
+
+    @Override
+    protected boolean dispatchHoverEvent(MotionEvent event) {
+        return mAccessibilityHelper.dispatchHoverEvent(event) || super.dispatchHoverEvent(event);
+    }
+
+    // returns NO_KEY if there is no key at (x, y)
+    private int getKeyIndexAt(float x, float y) {
+        if (mKeyRights == null || mRowHeight <= 0) return NO_KEY;
+        final int row = (int) ((y - getPaddingTop()) / mRowHeight);
+        if (y < getPaddingTop() || row >= mRowFirstKeys.length) return NO_KEY;
+        if (x < getPaddingLeft()) return NO_KEY;
+
+        // the first key in the row whose right edge is past x
+        int low = mRowFirstKeys[row] - 1;
+        int high = low + 1 + mNumberOfKeysInRow[row];
+        final int rowEnd = high;
+        while (high - low > 1) {
+            final int guess = (high + low) >>> 1;
+            if (mKeyRights[guess] <= x) {
+                low = guess;
+            } else {
+                high = guess;
+            }
+        }
+        return (high < rowEnd) ? high : NO_KEY;
+    }
+
+    // the keys don't have a location of their own on the screen
+    @Override
+    void getKeyLocationOnScreen(Key key, int[] location) {
+        getLocationOnScreen(location);
+        location[0] += key.getLeft();
+        location[1] += key.getTop();
+    }
+
+    // Gives each key a virtual accessibility node, since the keys aren't in
+    // the view hierarchy. The virtual view id is the key index.
+    private class KeyAccessibilityHelper extends ExploreByTouchHelper {
+
+        private final Rect mBounds = new Rect();
+
+        KeyAccessibilityHelper(View host) {
+            super(host);
+        }
+
+        @Override
+        protected int getVirtualViewAt(float x, float y) {
+            int index = getKeyIndexAt(x, y);
+            return (index == NO_KEY) ? INVALID_ID : index;
+        }
+
+        @Override
+        protected void getVisibleVirtualViews(List<Integer> virtualViewIds) {
+            for (int i = 0; i < mKeys.size(); i++) {
+                Key key = mKeys.get(i);
+                if (key.getVisibility() == VISIBLE && key.getWidth() > 0 && key.getHeight() > 0) {
+                    virtualViewIds.add(i);
+                }
+            }
+        }
+
+        @Override
+        protected void onPopulateNodeForVirtualView(int virtualViewId, AccessibilityNodeInfoCompat node) {
+            Key key = mKeys.get(virtualViewId);
+            CharSequence description = key.getKeyDescription();
+            node.setContentDescription(description == null ? "" : description);
+            mBounds.set(key.getLeft(), key.getTop(), key.getRight(), key.getBottom());
+            if (mBounds.isEmpty()) mBounds.set(0, 0, 1, 1); // the helper needs bounds
+            node.setBoundsInParent(mBounds);
+            node.addAction(AccessibilityNodeInfoCompat.ACTION_CLICK);
+        }
+
+        @Override
+        protected boolean onPerformActionForVirtualView(int virtualViewId, int action, Bundle arguments) {
+            if (action != AccessibilityNodeInfoCompat.ACTION_CLICK) return false;
+            if (virtualViewId < 0 || virtualViewId >= mKeys.size()) return false;
+
+            // a tap in the middle of the key
+            Key key = mKeys.get(virtualViewId);
+            float x = (key.getLeft() + key.getRight()) / 2f;
+            float y = (key.getTop() + key.getBottom()) / 2f;
+            long time = SystemClock.uptimeMillis();
+            MotionEvent down = MotionEvent.obtain(time, time, MotionEvent.ACTION_DOWN, x, y, 0);
+            MotionEvent up = MotionEvent.obtain(time, time, MotionEvent.ACTION_UP, x, y, 0);
+            dispatchTouchEventToKey(key, down);
+            dispatchTouchEventToKey(key, up);
+            down.recycle();
+            up.recycle();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package net.studymongolian.mongollibrary;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+// This class blinks the cursors of all MongolEditTexts with one timer instead
+// of each view posting its own runnable. An edit text is only registered while
+// its cursor should actually blink (focused, in a focused window, shown and
+// with the screen on), so nothing wakes up the UI thread when no cursor is
+// visible.
+//
+// On API 16+ the ticks are posted with the Choreographer so that the cursor
+// invalidation happens together with the next frame rather than at a random
+// time between frames.
+//
+// A tick doesn't do any layout work. Each edit text only invalidates the
+// cursor rect that it cached the last time it was drawn.
+//
+// Only use this from the UI thread.
+
+class CursorBlinker {
+
+    static final int BLINK = 500; // ms
+
+    private static CursorBlinker sInstance;
+
+    private final ArrayList<MongolEditText> mEditTexts = new ArrayList<>();
+    private final Ticker mTicker;
+    private boolean mIsBlinkOn = true;
+
+    static CursorBlinker getInstance() {
+        if (sInstance == null) {
+            sInstance = new CursorBlinker();
+        }
+        return sInstance;
+    }
+
+    private CursorBlinker() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mTicker = new FrameTicker(this);
+        } else {
+            mTicker = new HandlerTicker(this);
+        }
+    }
+
+    // true when the cursor is hidden
+    boolean isBlinkOn() {
+        return mIsBlinkOn;
+    }
+
+    /**
+     * Shows the cursor of the edit text and starts blinking it. The blinking
+     * starts over so that the cursor stays visible for a whole period after
+     * the user types or moves it.
+     */
+    void start(MongolEditText editText) {
+        if (!mEditTexts.contains(editText)) {
+            mEditTexts.add(editText);
+        }
+        mIsBlinkOn = false;
+        mTicker.cancel();
+        mTicker.postTick(BLINK);
+    }
+
+    void stop(MongolEditText editText) {
+        mEditTexts.remove(editText);
+        if (mEditTexts.isEmpty()) {
+            mTicker.cancel();
+        }
+    }
+
+    private void tick() {
+        mIsBlinkOn = !mIsBlinkOn;
+        // going backwards because an edit text can stop itself in onBlink()
+        for (int i = mEditTexts.size() - 1; i >= 0; i--) {
+            mEditTexts.get(i).onBlink();
+        }
+        if (!mEditTexts.isEmpty()) {
+            mTicker.postTick(BLINK);
+        }
+    }
+
+    private interface Ticker {
+        void postTick(long delayMillis);
+
+        void cancel();
+    }
+
+    private static class HandlerTicker implements Ticker, Runnable {
+        private final CursorBlinker mBlinker;
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        HandlerTicker(CursorBlinker blinker) {
+            mBlinker = blinker;
+        }
+
+        @Override
+        public void postTick(long delayMillis) {
+            mHandler.postDelayed(this, delayMillis);
+        }
+
+        @Override
+        public void cancel() {
+            mHandler.removeCallbacks(this);
+        }
+
+        @Override
+        public void run() {
+            mBlinker.tick();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class FrameTicker implements Ticker, Choreographer.FrameCallback {
+        private final CursorBlinker mBlinker;
+        private final Choreographer mChoreographer = Choreographer.getInstance();
+
+        FrameTicker(CursorBlinker blinker) {
+            mBlinker = blinker;
+        }
+
+        @Override
+        public void postTick(long delayMillis) {
+            mChoreographer.postFrameCallbackDelayed(this, delayMillis);
+        }
+
+        @Override
+        public void cancel() {
+            mChoreographer.removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mBlinker.tick();
+        }
+    }
+}
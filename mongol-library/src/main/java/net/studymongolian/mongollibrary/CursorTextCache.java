@@ -0,0 +1,146 @@
+package net.studymongolian.mongollibrary;
+
+// A keyboard uses this to keep a local copy of the text around the cursor so
+// that it doesn't have to ask the InputConnection (an IPC call for a system
+// EditText) every time a key is pressed.
+//
+// The copy is filled from the InputConnection when it is needed and then kept
+// up to date with the text that the keyboard commits itself. The selection
+// updates from the editor tell whether someone else changed the text or moved
+// the cursor. If they did (or if the editor doesn't send selection updates),
+// the copy is invalid and has to be filled again.
+//
+// A local commit is recorded before it is sent to the InputConnection, since
+// some editors (like MongolEditText) send the selection update while the
+// commit is still running and others send it later. Until the updates arrive,
+// the positions that the local commits move the cursor to are pending, and a
+// selection update at one of those positions doesn't invalidate the copy.
+
+class CursorTextCache {
+
+    static final int CONTEXT_LENGTH = 20; // chars on each side of the cursor
+    private static final int UNKNOWN = -1;
+    private static final int MAX_PENDING = 8;
+
+    private final StringBuilder mBefore = new StringBuilder();
+    private final StringBuilder mAfter = new StringBuilder();
+    private boolean mIsValid;
+    private int mCursor = UNKNOWN; // after the last selection update or local commit
+    private final int[] mPending = new int[MAX_PENDING]; // cursor positions, oldest first
+    private int mPendingCount;
+
+    boolean isValid() {
+        return mIsValid;
+    }
+
+    // true if the editor sends selection updates, so local commits can be checked
+    boolean isTrackingCursor() {
+        return mCursor != UNKNOWN;
+    }
+
+    /**
+     * Call this with the text from the InputConnection.
+     *
+     * @param before the text before the cursor (may be null)
+     * @param after  the text after the cursor (may be null)
+     */
+    void set(CharSequence before, CharSequence after) {
+        mBefore.setLength(0);
+        mAfter.setLength(0);
+        if (before != null) mBefore.append(before);
+        if (after != null) mAfter.append(after);
+        trimBefore();
+        trimAfter();
+        mIsValid = true;
+    }
+
+    void invalidate() {
+        mIsValid = false;
+    }
+
+    // for a new editor
+    void reset() {
+        mIsValid = false;
+        mCursor = UNKNOWN;
+        mPendingCount = 0;
+    }
+
+    /**
+     * Call this just before committing text at the cursor (with no selection
+     * or composing region).
+     */
+    void beforeCommit(CharSequence text) {
+        if (mCursor == UNKNOWN || mPendingCount == MAX_PENDING) {
+            mCursor = UNKNOWN;
+            mPendingCount = 0;
+            invalidate();
+            return;
+        }
+        mCursor += text.length();
+        mPending[mPendingCount++] = mCursor;
+        if (!mIsValid) return;
+        mBefore.append(text);
+        trimBefore();
+    }
+
+    /**
+     * Call this with every selection update from the editor.
+     */
+    void onSelectionChanged(int selStart, int selEnd) {
+        if (selStart != selEnd) {
+            mCursor = UNKNOWN;
+            mPendingCount = 0;
+            invalidate();
+            return;
+        }
+        // the cursor should only move to where the local commits put it
+        int pending = indexOfPending(selStart);
+        if (pending >= 0) {
+            // the updates for the earlier commits may have been skipped
+            mPendingCount -= pending + 1;
+            System.arraycopy(mPending, pending + 1, mPending, 0, mPendingCount);
+            return;
+        }
+        if (mPendingCount > 0 || selStart != mCursor) invalidate();
+        mPendingCount = 0;
+        mCursor = selStart;
+    }
+
+    private int indexOfPending(int cursor) {
+        for (int i = 0; i < mPendingCount; i++) {
+            if (mPending[i] == cursor) return i;
+        }
+        return -1;
+    }
+
+    // returns 0 if there is no char before the cursor
+    char getCharBeforeCursor() {
+        final int length = mBefore.length();
+        if (length == 0) return 0;
+        return mBefore.charAt(length - 1);
+    }
+
+    CharSequence getTextBeforeCursor(int length) {
+        final int end = mBefore.length();
+        return mBefore.subSequence(Math.max(0, end - length), end);
+    }
+
+    CharSequence getTextAfterCursor(int length) {
+        return mAfter.subSequence(0, Math.min(length, mAfter.length()));
+    }
+
+    private void trimBefore() {
+        int extra = mBefore.length() - CONTEXT_LENGTH;
+        if (extra <= 0) return;
+        // don't leave half of a surrogate pair
+        if (Character.isLowSurrogate(mBefore.charAt(extra))) extra++;
+        mBefore.delete(0, extra);
+    }
+
+    private void trimAfter() {
+        int length = CONTEXT_LENGTH;
+        if (mAfter.length() <= length) return;
+        if (Character.isHighSurrogate(mAfter.charAt(length - 1))) length--;
+        mAfter.setLength(length);
+    }
+}
@@ -27,7 +27,10 @@ import java.util.List;
  */
 public class ImeContainer extends ViewGroup implements Keyboard.KeyboardListener {
 
-    List<Keyboard> mKeyboardCandidates;
+    // Keyboards are only created the first time that they are shown. After
+    // that they stay in the container (invisible when not current) so that
+    // switching back to them doesn't have to measure and lay out the keys again.
+    List<KeyboardEntry> mKeyboardCandidates;
     Keyboard mCurrentKeyboard;
     private WeakReference<MongolInputMethodManager> mimm;
 
@@ -76,13 +79,19 @@ public class ImeContainer extends ViewGroup implements Keyboard.KeyboardListener
         int keyboardWidth = totalAvailableWidth;
         int keyboardHeight = totalAvailableHeight;
 
-        // just choose the first keyboard for now
-        View child = getChildAt(0);
-
-        child.measure(MeasureSpec.makeMeasureSpec(keyboardWidth, MeasureSpec.EXACTLY),
-                MeasureSpec.makeMeasureSpec(keyboardHeight, MeasureSpec.EXACTLY));
-        child.layout((int) x, (int) y, (int) (x + keyboardWidth), (int) (y + keyboardHeight));
-
+        // All of the created keyboards get the same size, so the hidden ones
+        // are ready to show without another layout pass. They only need to be
+        // laid out again when the size of the container changed.
+        for (int i = 0; i < count; i++) {
+            View child = getChildAt(i);
+            if (child.getVisibility() == INVISIBLE && !child.isLayoutRequested()
+                    && child.getLeft() == (int) x && child.getTop() == (int) y
+                    && child.getWidth() == keyboardWidth && child.getHeight() == keyboardHeight)
+                continue;
+            child.measure(MeasureSpec.makeMeasureSpec(keyboardWidth, MeasureSpec.EXACTLY),
+                    MeasureSpec.makeMeasureSpec(keyboardHeight, MeasureSpec.EXACTLY));
+            child.layout((int) x, (int) y, (int) (x + keyboardWidth), (int) (y + keyboardHeight));
+        }
     }
 
     // forward this on to the current keyboard
@@ -108,23 +117,40 @@ public class ImeContainer extends ViewGroup implements Keyboard.KeyboardListener
     @Override
     public void onRequestNewKeyboard(String keyboardDisplayName) {
 
-        Keyboard newKeyboard = null;
-        for (Keyboard keyboard : mKeyboardCandidates) {
-            if (keyboard.getDisplayName().equals(keyboardDisplayName)) {
-                newKeyboard = keyboard;
+        KeyboardEntry newEntry = null;
+        for (KeyboardEntry entry : mKeyboardCandidates) {
+            if (entry.displayName.equals(keyboardDisplayName)) {
+                newEntry = entry;
             }
         }
 
-        if (newKeyboard == null) return;
+        if (newEntry == null) return;
 
-        this.removeView(mCurrentKeyboard);
-        newKeyboard.setKeyboardListener(this);
-        this.addView(newKeyboard);
+        Keyboard newKeyboard = getOrCreateKeyboard(newEntry);
+        if (newKeyboard == mCurrentKeyboard) return;
+
+        // INVISIBLE rather than GONE so that the container isn't laid out again
+        if (mCurrentKeyboard != null) {
+            mCurrentKeyboard.setVisibility(View.INVISIBLE);
+            mCurrentKeyboard.setInputConnection(null);
+        }
+        newKeyboard.setVisibility(View.VISIBLE);
         mCurrentKeyboard = newKeyboard;
         InputConnection ic = getInputConnection();
         mCurrentKeyboard.setInputConnection(ic);
     }
 
+    private Keyboard getOrCreateKeyboard(KeyboardEntry entry) {
+        if (entry.keyboard == null) {
+            Keyboard keyboard = entry.factory.createKeyboard(getContext());
+            keyboard.setKeyboardListener(this);
+            keyboard.setVisibility(View.INVISIBLE);
+            this.addView(keyboard);
+            entry.keyboard = keyboard;
+        }
+        return entry.keyboard;
+    }
+
     @Override
     public Keyboard.PopupCandidates getKeyboardCandidates() {
         int numberOfOtherKeyboards = mKeyboardCandidates.size() - 1;
@@ -132,11 +158,11 @@ public class ImeContainer extends ViewGroup implements Keyboard.KeyboardListener
         String[] names = new String[numberOfOtherKeyboards];
         int nameIndex = 0;
         for (int i = 0; i < mKeyboardCandidates.size(); i++) {
-            Keyboard keyboard = mKeyboardCandidates.get(i);
-            if (keyboard == mCurrentKeyboard) {
+            KeyboardEntry entry = mKeyboardCandidates.get(i);
+            if (entry.keyboard != null && entry.keyboard == mCurrentKeyboard) {
                 continue;
             }
-            names[nameIndex] = keyboard.getDisplayName();
+            names[nameIndex] = entry.displayName;
             nameIndex++;
         }
         return new Keyboard.PopupCandidates(names);
@@ -146,17 +172,60 @@ public class ImeContainer extends ViewGroup implements Keyboard.KeyboardListener
         this.mimm = new WeakReference<>(inputMethodManager);
     }
 
+    /**
+     * Adds a keyboard that has already been created.
+     * Prefer addKeyboard(KeyboardFactory) so that the keyboard is only
+     * created if it is used.
+     */
     public void addKeyboard(Keyboard keyboard) {
+        KeyboardEntry entry = new KeyboardEntry(keyboard.getDisplayName(), null);
+        entry.keyboard = keyboard;
+        keyboard.setKeyboardListener(this);
+        keyboard.setVisibility(View.INVISIBLE);
+        this.addView(keyboard);
+        addEntry(entry);
+    }
+
+    /**
+     * Adds a keyboard that will be created the first time that it is shown.
+     * The first keyboard added is the one that shows.
+     */
+    public void addKeyboard(KeyboardFactory factory) {
+        addEntry(new KeyboardEntry(factory.getDisplayName(), factory));
+    }
+
+    private void addEntry(KeyboardEntry entry) {
         if (mKeyboardCandidates == null)
             mKeyboardCandidates = new ArrayList<>();
 
-        mKeyboardCandidates.add(keyboard);
+        mKeyboardCandidates.add(entry);
 
         // make the first keyboard added be the one that shows
         if (mKeyboardCandidates.size() == 1) {
-            keyboard.setKeyboardListener(this);
-            this.addView(keyboard);
-            mCurrentKeyboard = keyboard;
+            mCurrentKeyboard = getOrCreateKeyboard(entry);
+            mCurrentKeyboard.setVisibility(View.VISIBLE);
+        }
+    }
+
+    public interface KeyboardFactory {
+        /**
+         * @return the same name as Keyboard.getDisplayName() of the keyboard
+         * that will be created (it is shown in the list of keyboards before
+         * the keyboard exists)
+         */
+        String getDisplayName();
+
+        Keyboard createKeyboard(Context context);
+    }
+
+    static class KeyboardEntry {
+        final String displayName;
+        final KeyboardFactory factory;
+        Keyboard keyboard; // null until first shown
+
+        KeyboardEntry(String displayName, KeyboardFactory factory) {
+            this.displayName = displayName;
+            this.factory = factory;
         }
     }
 }
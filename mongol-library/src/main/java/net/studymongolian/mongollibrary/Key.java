@@ -5,6 +5,7 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
 import android.util.AttributeSet;
 import android.view.GestureDetector;
 import android.view.View;
@@ -22,6 +23,9 @@ public abstract class Key extends View {
     protected int mPressedColor;
     protected RectF mSizeRect;
 
+    // set when the key is drawn by a CanvasKeyboard rather than being a child view
+    CanvasKeyboard mCanvasKeyboard;
+
     public Key(Context context) {
         super(context);
     }
@@ -83,6 +87,32 @@ public abstract class Key extends View {
         }
     }
 
+    // A key in a CanvasKeyboard has no parent to pass these on to, so the
+    // keyboard is told directly.
+
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        if (mCanvasKeyboard != null) mCanvasKeyboard.invalidateKey(this);
+    }
+
+    @Override
+    public void invalidateDrawable(Drawable drawable) {
+        super.invalidateDrawable(drawable);
+        if (mCanvasKeyboard != null && verifyDrawable(drawable)) mCanvasKeyboard.invalidateKey(this);
+    }
+
+    @Override
+    public void requestLayout() {
+        super.requestLayout();
+        if (mCanvasKeyboard != null) mCanvasKeyboard.requestKeyLayout();
+    }
+
+    // what accessibility services read for the key
+    CharSequence getKeyDescription() {
+        return getContentDescription();
+    }
+
     @Override
     public void setPressed(boolean pressed) {
         super.setPressed(pressed);
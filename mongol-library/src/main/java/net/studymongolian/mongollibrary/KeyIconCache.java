@@ -0,0 +1,89 @@
+package net.studymongolian.mongollibrary;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.LruCache;
+
+// The keyboard icons (return, backspace, keyboard, etc) are the same for
+// every keyboard, so this cache decodes each icon resource only once and
+// keeps the copies that are scaled to the key sizes. Since the light and dark
+// themes use different resources, the resource id also identifies the theme.
+//
+// The bitmaps are shared, so don't recycle or change them.
+//
+// Only use this from the UI thread.
+
+class KeyIconCache {
+
+    private static final int MAX_SIZE_BYTES = 4 * 1024 * 1024;
+
+    private static final LruCache<Object, Bitmap> sIcons =
+            new LruCache<Object, Bitmap>(MAX_SIZE_BYTES) {
+                @Override
+                protected int sizeOf(Object key, Bitmap bitmap) {
+                    return bitmap.getByteCount();
+                }
+            };
+
+    private KeyIconCache() {
+    }
+
+    /**
+     * @param resources  used to decode the icon the first time
+     * @param resourceId the drawable resource id of the icon
+     * @return the decoded icon
+     */
+    static Bitmap getIcon(Resources resources, int resourceId) {
+        Bitmap icon = sIcons.get(resourceId);
+        if (icon == null) {
+            icon = BitmapFactory.decodeResource(resources, resourceId);
+            sIcons.put(resourceId, icon);
+        }
+        return icon;
+    }
+
+    /**
+     * @param source an icon (from getIcon() or any other bitmap)
+     * @param width  the scaled width
+     * @param height the scaled height
+     * @return a copy of the source scaled to width x height
+     */
+    static Bitmap getScaledIcon(Bitmap source, int width, int height) {
+        ScaledKey key = new ScaledKey(source, width, height);
+        Bitmap icon = sIcons.get(key);
+        if (icon == null) {
+            icon = Bitmap.createScaledBitmap(source, width, height, true);
+            sIcons.put(key, icon);
+        }
+        return icon;
+    }
+
+    private static class ScaledKey {
+        private final Bitmap source;
+        private final int width;
+        private final int height;
+
+        ScaledKey(Bitmap source, int width, int height) {
+            this.source = source;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ScaledKey)) return false;
+            ScaledKey other = (ScaledKey) o;
+            return source == other.source && width == other.width && height == other.height;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(source);
+            result = 31 * result + width;
+            result = 31 * result + height;
+            return result;
+        }
+    }
+}
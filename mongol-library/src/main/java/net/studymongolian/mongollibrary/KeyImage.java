@@ -72,12 +72,13 @@ public class KeyImage extends Key {
         if (mNeedToScaleImage) {
 
             //float scale;
+            // the keys of the same size on all keyboards share the scaled icon
             if (wDiff < hDiff) {
                 int newHeight = (int) (mImage.getHeight() * adjustedMinWidth / mImage.getWidth());
-                mImageScaled = Bitmap.createScaledBitmap(mImage, (int) adjustedMinWidth, newHeight, true);
+                mImageScaled = KeyIconCache.getScaledIcon(mImage, (int) adjustedMinWidth, newHeight);
             } else {
                 int newWidth = (int) (mImage.getWidth() * adjustedMinHeight / mImage.getHeight());
-                mImageScaled = Bitmap.createScaledBitmap(mImage, newWidth, (int) (adjustedMinHeight), true);
+                mImageScaled = KeyIconCache.getScaledIcon(mImage, newWidth, (int) (adjustedMinHeight));
             }
         }
 
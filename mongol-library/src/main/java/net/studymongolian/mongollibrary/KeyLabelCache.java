@@ -0,0 +1,125 @@
+package net.studymongolian.mongollibrary;
+
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.text.TextPaint;
+import android.util.LruCache;
+
+// The labels on the keys only change between a small number of values (the
+// letters, the punctuation mode and a few special labels) but they are drawn
+// by many keys on every keyboard. This cache shapes each label (Unicode to
+// Menksoft) and fits it to a key only once. The results are shared by all of
+// the keys (of all the keyboards) that show the same label at the same size.
+//
+// Only use this from the UI thread.
+
+class KeyLabelCache {
+
+    private static final int MAX_GLYPH_STRINGS = 256;
+    private static final int MAX_LABELS = 256;
+
+    private static final LruCache<String, String> sGlyphStrings =
+            new LruCache<>(MAX_GLYPH_STRINGS);
+    private static final LruCache<LabelKey, Label> sLabels = new LruCache<>(MAX_LABELS);
+    private static final TextPaint sMeasurePaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+    private static final LabelKey sLookupKey = new LabelKey();
+
+    private KeyLabelCache() {
+    }
+
+    /**
+     * @param unicode the label text
+     * @return the Menksoft glyphs to draw for the label
+     */
+    static String getGlyphs(String unicode) {
+        String glyphs = sGlyphStrings.get(unicode);
+        if (glyphs == null) {
+            glyphs = MongolCode.INSTANCE.unicodeToMenksoft(unicode);
+            sGlyphStrings.put(unicode, glyphs);
+        }
+        return glyphs;
+    }
+
+    /**
+     * @param glyphs   the Menksoft label text
+     * @param typeface the typeface of the paint that will draw it
+     * @param textSize the text size in pixels (before fitting)
+     * @param maxWidth the label is made smaller if it is wider than this
+     * @return the size and bounds of the label (don't change them)
+     */
+    static Label getLabel(String glyphs, Typeface typeface, float textSize, int maxWidth) {
+        sLookupKey.set(glyphs, typeface, textSize, maxWidth);
+        Label label = sLabels.get(sLookupKey);
+        if (label == null) {
+            label = measure(glyphs, typeface, textSize, maxWidth);
+            LabelKey key = new LabelKey();
+            key.set(glyphs, typeface, textSize, maxWidth);
+            sLabels.put(key, label);
+        }
+        return label;
+    }
+
+    private static Label measure(String glyphs, Typeface typeface, float textSize, int maxWidth) {
+        TextPaint paint = sMeasurePaint;
+        paint.setTypeface(typeface);
+        paint.setTextSize(textSize);
+        Rect bounds = new Rect();
+        paint.getTextBounds(glyphs, 0, glyphs.length(), bounds);
+        boolean isResized = false;
+        if (bounds.width() > maxWidth) {
+            // automatically resize text that is too large
+            float proportion = (float) maxWidth / bounds.width();
+            textSize *= proportion;
+            paint.setTextSize(textSize);
+            paint.getTextBounds(glyphs, 0, glyphs.length(), bounds);
+            isResized = true;
+        }
+        return new Label(textSize, bounds, isResized);
+    }
+
+    static class Label {
+        final float textSize;
+        final Rect bounds;
+        final boolean isResized;
+
+        Label(float textSize, Rect bounds, boolean isResized) {
+            this.textSize = textSize;
+            this.bounds = bounds;
+            this.isResized = isResized;
+        }
+    }
+
+    private static class LabelKey {
+        private String glyphs;
+        private Typeface typeface;
+        private float textSize;
+        private int maxWidth;
+
+        void set(String glyphs, Typeface typeface, float textSize, int maxWidth) {
+            this.glyphs = glyphs;
+            this.typeface = typeface;
+            this.textSize = textSize;
+            this.maxWidth = maxWidth;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof LabelKey)) return false;
+            LabelKey other = (LabelKey) o;
+            return glyphs.equals(other.glyphs)
+                    && (typeface == null ? other.typeface == null : typeface.equals(other.typeface))
+                    && Float.compare(textSize, other.textSize) == 0
+                    && maxWidth == other.maxWidth;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = glyphs.hashCode();
+            result = 31 * result + (typeface != null ? typeface.hashCode() : 0);
+            result = 31 * result + Float.floatToIntBits(textSize);
+            result = 31 * result + maxWidth;
+            return result;
+        }
+    }
+}
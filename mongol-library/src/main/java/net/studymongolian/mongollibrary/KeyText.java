@@ -21,13 +21,18 @@ public class KeyText extends Key {
     private static final String DEBUG_TAG = "TAG";
     private static final int SUBTEXT_INDENT = 5; // px
 
-    private MongolCode renderer = MongolCode.INSTANCE;
     private TextPaint mTextPaint;
-    private Rect mTextBounds;
-    private Rect mSubTextBounds;
+    private String mText = "";
     private String mDisplayText;
     private String mDisplaySubText;
     private TextPaint mSubTextPaint;
+    private float mTextSize;    // px, before fitting the text to the key
+    private float mSubTextSize; // px, before fitting the text to the key
+
+    // shared with the other keys that show the same label
+    private KeyLabelCache.Label mTextLabel;
+    private KeyLabelCache.Label mSubTextLabel;
+    private int mLabelMaxWidth;
 
     public KeyText(Context context) {
         this(context, null);
@@ -44,16 +49,32 @@ public class KeyText extends Key {
 
     private void init() {
         mTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
-        mTextPaint.setTextSize(90);
-        mTextBounds = new Rect();
+        mTextSize = 90;
 
         mSubTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
-        mSubTextPaint.setTextSize(90);
-        mSubTextBounds = new Rect();
+        mSubTextSize = 90;
 
+        mDisplayText = "";
         mDisplaySubText = "";
     }
 
+    // the labels are only measured again when the text, size or key size changes
+    private void updateLabels(int maxWidth) {
+        if (mTextLabel != null && mLabelMaxWidth == maxWidth) return;
+        mLabelMaxWidth = maxWidth;
+        mTextLabel = KeyLabelCache.getLabel(mDisplayText,
+                mTextPaint.getTypeface(), mTextSize, maxWidth);
+        mTextPaint.setTextSize(mTextLabel.textSize);
+        mSubTextLabel = KeyLabelCache.getLabel(mDisplaySubText,
+                mSubTextPaint.getTypeface(), mSubTextSize, maxWidth);
+        mSubTextPaint.setTextSize(mSubTextLabel.textSize);
+    }
+
+    private void invalidateLabels() {
+        mTextLabel = null;
+        invalidate();
+    }
+
 
 
     @Override
@@ -66,22 +87,17 @@ public class KeyText extends Key {
         float x;
         float y;
 
+        updateLabels((int) threshold);
+
         canvas.save();
         canvas.rotate(90);
 
         // draw the subtext on the bottom right
         if (mDisplaySubText.length() > 0) {
-            float indent = SUBTEXT_INDENT;
-            mSubTextPaint.getTextBounds(mDisplaySubText, 0, mDisplaySubText.length(), mSubTextBounds);
-            if (mSubTextBounds.width() > threshold) {
-                // automatically resize text that is too large
-                float proportion = threshold / mSubTextBounds.width();
-                mSubTextPaint.setTextSize(mSubTextPaint.getTextSize() * proportion);
-                mSubTextPaint.getTextBounds(mDisplaySubText, 0, mDisplaySubText.length(), mSubTextBounds);
-                indent = 0;
-            }
-            x = keyHeight - mSubTextBounds.width();
-            y = - keyWidth - getPaddingRight() + mSubTextBounds.height();
+            final Rect subTextBounds = mSubTextLabel.bounds;
+            float indent = mSubTextLabel.isResized ? 0 : SUBTEXT_INDENT;
+            x = keyHeight - subTextBounds.width();
+            y = - keyWidth - getPaddingRight() + subTextBounds.height();
             // make sure a large border radius doesn't overlap the subtext
             float radiusAdjustment = (float) (mBorderRadius * ( 1 - (1 / Math.sqrt(2))));
             indent += radiusAdjustment;
@@ -89,15 +105,9 @@ public class KeyText extends Key {
         }
 
         // draw the main text in the center
-        mTextPaint.getTextBounds(mDisplayText, 0, mDisplayText.length(), mTextBounds);
-        if (mTextBounds.width() > threshold) {
-            // automatically resize text that is too large
-            float proportion = threshold / mTextBounds.width();
-            mTextPaint.setTextSize(mTextPaint.getTextSize() * proportion);
-            mTextPaint.getTextBounds(mDisplayText, 0, mDisplayText.length(), mTextBounds);
-        }
-        x = getPaddingTop() + (keyHeight - mTextBounds.right) / 2;
-        y = -getPaddingLeft() - mTextBounds.bottom - (keyWidth - mTextBounds.height()) / 2;
+        final Rect textBounds = mTextLabel.bounds;
+        x = getPaddingTop() + (keyHeight - textBounds.right) / 2;
+        y = -getPaddingLeft() - textBounds.bottom - (keyWidth - textBounds.height()) / 2;
         canvas.drawText(mDisplayText, x, y, mTextPaint);
 
         canvas.restore();
@@ -107,17 +117,28 @@ public class KeyText extends Key {
 
 
     public void setText(String text) {
-        this.mDisplayText = renderer.unicodeToMenksoft(text);
-        invalidate();
+        String glyphs = KeyLabelCache.getGlyphs(text);
+        mText = text;
+        if (glyphs.equals(mDisplayText)) return;
+        this.mDisplayText = glyphs;
+        invalidateLabels();
     }
 
     public void setText(char text) {
         setText(String.valueOf(text));
     }
 
+    @Override
+    CharSequence getKeyDescription() {
+        CharSequence description = super.getKeyDescription();
+        return (description != null) ? description : mText;
+    }
+
     public void setSubText(String text) {
-        this.mDisplaySubText = renderer.unicodeToMenksoft(text);
-        invalidate();
+        String glyphs = KeyLabelCache.getGlyphs(text);
+        if (glyphs.equals(mDisplaySubText)) return;
+        this.mDisplaySubText = glyphs;
+        invalidateLabels();
     }
 
     public void setSubText(char text) {
@@ -127,14 +148,14 @@ public class KeyText extends Key {
     public void setTypeFace(Typeface typeface) {
         mTextPaint.setTypeface(typeface);
         mSubTextPaint.setTypeface(typeface);
-        invalidate();
+        invalidateLabels();
     }
 
     public void setTextSize(float sizeSP) {
         float sizePx = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP,
                 sizeSP, getResources().getDisplayMetrics());
-        mTextPaint.setTextSize(sizePx);
-        invalidate();
+        mTextSize = sizePx;
+        invalidateLabels();
     }
 
     public void setTextColor(int textColor) {
@@ -145,8 +166,8 @@ public class KeyText extends Key {
     public void setSubTextSize(float subTextSize) {
         float sizePx = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP,
                 subTextSize, getResources().getDisplayMetrics());
-        mSubTextPaint.setTextSize(sizePx);
-        invalidate();
+        mSubTextSize = sizePx;
+        invalidateLabels();
     }
 
     public void setSubTextColor(int subTextColor) {
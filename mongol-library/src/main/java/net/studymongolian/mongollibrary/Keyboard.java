@@ -2,9 +2,9 @@ package net.studymongolian.mongollibrary;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.os.Handler;
 import android.text.TextUtils;
@@ -24,6 +24,10 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 
 public abstract class Keyboard extends ViewGroup {
@@ -71,9 +75,27 @@ public abstract class Keyboard extends ViewGroup {
     // Our communication link to the EditText/MongolEditText
     protected InputConnection inputConnection;
     protected StringBuilder mComposing = new StringBuilder();
+    // A local copy of the text around the cursor. It is filled from the
+    // InputConnection after the text or the selection changes (never when a
+    // key is pressed) and the popup candidates are made only from it.
+    private final CursorTextCache mTextCache = new CursorTextCache();
+    private final Runnable mUpdateTextCache = new Runnable() {
+        @Override
+        public void run() {
+            updateTextCache();
+        }
+    };
 
     protected KeyboardListener mKeyboardListener = null;
 
+    // The suffix candidates for the word before the cursor are worked out
+    // here (from a copy of the text) after each commit. Only the UI thread
+    // uses the InputConnection and the text cache.
+    private static ExecutorService sCandidateExecutor;
+    private Executor mCandidateExecutor = getDefaultCandidateExecutor();
+    private String mSuffixCandidatesWord;
+    private PopupCandidates mSuffixCandidates;
+
     public Keyboard(Context context) {
         super(context);
         init(context);
@@ -127,25 +149,90 @@ public abstract class Keyboard extends ViewGroup {
         mPopupTextColor = DEFAULT_POPUP_TEXT_COLOR;
     }
 
+    private static synchronized ExecutorService getDefaultCandidateExecutor() {
+        if (sCandidateExecutor == null) {
+            sCandidateExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "KeyboardCandidates");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sCandidateExecutor;
+    }
+
+    /**
+     * By default the suffix candidates for the word before the cursor are
+     * worked out after each commit on a background thread that all keyboards
+     * share. getPopupCandidates() is always called on the UI thread.
+     *
+     * @param executor the executor to work out the suffix candidates on, or
+     *                 null to work them out on the UI thread when they are needed
+     */
+    public void setCandidateExecutor(Executor executor) {
+        mCandidateExecutor = executor;
+    }
+
     protected void initTextKey(KeyText textKey, String primary, String punctuation) {
-        textKey.setOnTouchListener(textKeyTouchListener);
         mKeyValues.put(textKey, primary);
         mKeyPunctuationValues.put(textKey, punctuation);
-        addView(textKey);
+        addKey(textKey, textKeyTouchListener);
+    }
+
+    /**
+     * Adds the next key to the keyboard. The keys are laid out in the order
+     * that they are added. (This is the same as setting the touch listener and
+     * calling addView().)
+     *
+     * @param key           the key
+     * @param touchListener handles the touch events on the key
+     */
+    protected void addKey(Key key, View.OnTouchListener touchListener) {
+        key.setOnTouchListener(touchListener);
+        addView(key);
     }
 
     // number of keys and weights are initialized by keyboard subclass
     protected int[] mNumberOfKeysInRow;
     protected float[] mKeyWeights;
 
+    // the area inside the padding and the number of keys that the keys were
+    // last laid out for
+    private final Rect mKeyLayoutArea = new Rect();
+    private int mKeyLayoutCount = -1;
+
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
 
+        final int left = getPaddingLeft();
+        final int top = getPaddingTop();
+        final int right = getMeasuredWidth() - getPaddingRight();
+        final int bottom = getMeasuredHeight() - getPaddingBottom();
+
+        // Typing and switching keyboards don't change the keyboard size, so
+        // then only the keys that asked for a layout themselves are laid out.
+        final int keyCount = getChildCount();
+        if (keyCount == mKeyLayoutCount && mKeyLayoutArea.left == left && mKeyLayoutArea.top == top
+                && mKeyLayoutArea.right == right && mKeyLayoutArea.bottom == bottom) {
+            for (int i = 0; i < keyCount; i++) {
+                View child = getChildAt(i);
+                if (!child.isLayoutRequested()) continue;
+                child.measure(MeasureSpec.makeMeasureSpec(child.getWidth(), MeasureSpec.EXACTLY),
+                        MeasureSpec.makeMeasureSpec(child.getHeight(), MeasureSpec.EXACTLY));
+                child.layout(child.getLeft(), child.getTop(), child.getRight(), child.getBottom());
+            }
+            return;
+        }
+        mKeyLayoutArea.set(left, top, right, bottom);
+        mKeyLayoutCount = keyCount;
+
         // this must be set by the subclass
         int numberOfRows = mNumberOfKeysInRow.length;
 
-        final int totalWidth = getMeasuredWidth() - getPaddingLeft() - getPaddingRight();
-        final int totalHeight = getMeasuredHeight() - getPaddingTop() - getPaddingBottom();
+        final int totalWidth = right - left;
+        final int totalHeight = bottom - top;
 
         float x = getPaddingLeft();
         float y = getPaddingTop();
@@ -171,9 +258,22 @@ public abstract class Keyboard extends ViewGroup {
         }
     }
 
+    int getKeyCount() {
+        return getChildCount();
+    }
+
+    Key getKeyAt(int index) {
+        return (Key) getChildAt(index);
+    }
+
+    // where to show the popup for the key
+    void getKeyLocationOnScreen(Key key, int[] location) {
+        key.getLocationOnScreen(location);
+    }
+
     protected void applyThemeToKeys() {
-        for (int i = 0; i < getChildCount(); i++) {
-            Key child = (Key) getChildAt(i);
+        for (int i = 0; i < getKeyCount(); i++) {
+            Key child = getKeyAt(i);
             if (child instanceof KeyText) {
                 ((KeyText) child).setTypeFace(mTypeface);
                 ((KeyText) child).setTextSize(mPrimaryTextSize);
@@ -207,6 +307,8 @@ public abstract class Keyboard extends ViewGroup {
     // a reference to the current EditText's InputConnection
     public void setInputConnection(InputConnection ic) {
         this.inputConnection = ic;
+        mTextCache.reset();
+        updateTextCacheLater();
     }
 
     public void onUpdateSelection(int oldSelStart,
@@ -218,6 +320,8 @@ public abstract class Keyboard extends ViewGroup {
 
         // TODO in the Android source InputMethodService also handles Extracted Text here
 
+        mTextCache.onSelectionChanged(newSelStart, newSelEnd);
+
         // currently we are only using composing for popup glyph selection. If we want to be more
         // like the standard keyboards we could do composing on the whole word.
         if (mComposing.length() > 0 && (newSelStart != candidatesEnd
@@ -227,7 +331,10 @@ public abstract class Keyboard extends ViewGroup {
             if (inputConnection != null) {
                 inputConnection.finishComposingText();
             }
+            mTextCache.invalidate();
         }
+
+        if (!mTextCache.isValid()) updateTextCacheLater();
     }
 
     protected View.OnTouchListener textKeyTouchListener = new View.OnTouchListener() {
@@ -235,9 +342,35 @@ public abstract class Keyboard extends ViewGroup {
         Handler handler;
         final int LONGPRESS_THRESHOLD = 500; // milliseconds
 
+        // one popup is reused for every long press
         PopupKeyCandidates popupView;
-        int popupWidth;
         PopupWindow popupWindow;
+        final int[] location = new int[2];
+
+        // what the next popup will show
+        Key popupKey;
+        Keyboard.PopupCandidates popupCandidates;
+        int popupTouchX;
+
+        // the candidates only come from the text cache, so they are made when they are needed
+        final Runnable onLongPress = new Runnable() {
+            @Override
+            public void run() {
+                if (popupKey == null) return;
+                Keyboard.PopupCandidates candidates = getPopupCandidates(popupKey);
+                if (candidates == null || candidates.isEmpty()) return;
+                popupCandidates = candidates;
+                showPopup();
+            }
+        };
+
+        // highlight current item (after the popup window has loaded)
+        final Runnable highlightPopup = new Runnable() {
+            @Override
+            public void run() {
+                if (isShowingPopup()) popupView.updateTouchPosition(popupTouchX);
+            }
+        };
 
         @Override
         public boolean onTouch(View view, final MotionEvent event) {
@@ -251,16 +384,11 @@ public abstract class Keyboard extends ViewGroup {
                 case (MotionEvent.ACTION_DOWN):
 
                     key.setPressed(true);
-
-                    Keyboard.PopupCandidates candidates = getPopupCandidates(key);
-                    if (candidates != null && !candidates.isEmpty()) {
-                        int x = (int) event.getRawX();
-                        preparePopup(key, candidates, x);
-                    }
+                    requestCandidates(key, (int) event.getRawX());
                     return true;
                 case (MotionEvent.ACTION_MOVE):
 
-                    if (popupView != null) {
+                    if (isShowingPopup()) {
                         int x = (int) event.getRawX();
                         popupView.updateTouchPosition(x);
                     }
@@ -275,7 +403,7 @@ public abstract class Keyboard extends ViewGroup {
                     }
 
 
-                    if (popupView != null) {                                // handle popups
+                    if (isShowingPopup()) {                                 // handle popups
                         handlePopupChoice(key, event);
                     } else if (key == mKeyKeyboard) {                       // keyboard key
 
@@ -299,6 +427,7 @@ public abstract class Keyboard extends ViewGroup {
                                 inputConnection.finishComposingText();
                             }
                             mComposing.setLength(0);
+                            invalidateTextCache();
                         }
 
                         // TODO add composing on initial DA
@@ -311,11 +440,11 @@ public abstract class Keyboard extends ViewGroup {
 //                            }
 //                        }
 
-                        inputConnection.commitText(inputText, 1);
+                        commitText(inputText);
                     }
 
                     key.setPressed(false);
-                    if (handler != null) handler.removeCallbacksAndMessages(null);
+                    cancelCandidates();
                     return true;
                 default:
                     handlePopupChoice(key, event);
@@ -323,7 +452,7 @@ public abstract class Keyboard extends ViewGroup {
             }
         }
 
-        private void preparePopup(final Key key, final Keyboard.PopupCandidates candidates, final int xPosition) {
+        private void requestCandidates(Key key, int xPosition) {
 
             if (handler != null) {
                 handler.removeCallbacksAndMessages(null);
@@ -331,66 +460,66 @@ public abstract class Keyboard extends ViewGroup {
                 handler = new Handler();
             }
 
-            final Runnable runnableCode = new Runnable() {
-                @Override
-                public void run() {
-
-                    if (popupWindow != null) return;
-
-                    // get the popup view
-                    popupView = new PopupKeyCandidates(getContext());
-                    popupView.setBackgroundColor(mPopupBackgroundColor);
-                    popupView.setTextColor(mPopupTextColor);
-
-                    // update the popup view with the candidate choices
-                    if (candidates == null || candidates.getUnicode() == null) return;
-                    popupView.setCandidates(candidates.getUnicode());
-                    if (candidates.getDisplay() == null) {
-                        popupView.setDisplayCandidates(candidates.getUnicode(), PopupKeyCandidates.DEFAULT_TEXT_SIZE);
-                    } else {
-                        popupView.setDisplayCandidates(candidates.getDisplay(), PopupKeyCandidates.DEFAULT_TEXT_SIZE);
-                    }
+            popupKey = key;
+            popupCandidates = null;
+            popupTouchX = xPosition;
+            handler.postDelayed(onLongPress, LONGPRESS_THRESHOLD);
+        }
 
-                    popupView.setHighlightColor(mPopupHighlightColor);
-
-                    popupWindow = new PopupWindow(popupView,
-                            LinearLayout.LayoutParams.WRAP_CONTENT,
-                            LinearLayout.LayoutParams.WRAP_CONTENT);
-                    int location[] = new int[2];
-                    key.getLocationOnScreen(location);
-                    int measureSpec = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
-                    popupView.measure(measureSpec, measureSpec);
-                    popupWidth = popupView.getMeasuredWidth();
-                    int spaceAboveKey = key.getHeight() / 4;
-                    int x = xPosition - popupWidth / popupView.getChildCount() / 2;
-                    //int locationX = location[0]
-                    popupWindow.showAtLocation(key, Gravity.NO_GRAVITY,
-                            x, location[1] - popupView.getMeasuredHeight() - spaceAboveKey);
-
-
-                    // highlight current item (after the popup window has loaded)
-                    handler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            int x = xPosition;
-                            popupView.updateTouchPosition(x);
-                        }
-                    });
+        private void cancelCandidates() {
+            popupKey = null;
+            popupCandidates = null;
+            if (handler != null) handler.removeCallbacksAndMessages(null);
+        }
 
-                }
-            };
+        private void showPopup() {
+
+            if (isShowingPopup()) return;
+
+            Keyboard.PopupCandidates candidates = popupCandidates;
+            if (candidates == null || candidates.getUnicode() == null) return;
+
+            if (popupView == null) {
+                popupView = new PopupKeyCandidates(getContext());
+                popupWindow = new PopupWindow(popupView,
+                        LinearLayout.LayoutParams.WRAP_CONTENT,
+                        LinearLayout.LayoutParams.WRAP_CONTENT);
+            }
+            // the theme could have changed since the last popup
+            popupView.setBackgroundColor(mPopupBackgroundColor);
+            popupView.setTextColor(mPopupTextColor);
+            popupView.setHighlightColor(mPopupHighlightColor);
+
+            // update the popup view with the candidate choices
+            popupView.setCandidates(candidates.getUnicode());
+            String[] display = candidates.getDisplay();
+            if (display == null) display = candidates.getUnicode();
+            popupView.setDisplayCandidates(display, candidates.getGlyphs(),
+                    PopupKeyCandidates.DEFAULT_TEXT_SIZE);
 
-            handler.postDelayed(runnableCode, LONGPRESS_THRESHOLD);
+            Key key = popupKey;
+            getKeyLocationOnScreen(key, location);
+            int measureSpec = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+            popupView.measure(measureSpec, measureSpec);
+            int popupWidth = popupView.getMeasuredWidth();
+            int spaceAboveKey = key.getHeight() / 4;
+            int x = popupTouchX - popupWidth / popupView.getChildCount() / 2;
+            popupWindow.showAtLocation(Keyboard.this, Gravity.NO_GRAVITY,
+                    x, location[1] - popupView.getMeasuredHeight() - spaceAboveKey);
+
+            handler.post(highlightPopup);
+        }
+
+        private boolean isShowingPopup() {
+            return popupWindow != null && popupWindow.isShowing();
         }
 
         private void handlePopupChoice(Key key, MotionEvent event) {
 
             key.setPressed(false);
 
-            if (handler != null) {
-                handler.removeCallbacksAndMessages(null);
-            }
-            if (popupWindow == null) return;
+            cancelCandidates();
+            if (!isShowingPopup()) return;
 
             int x = (int) event.getRawX();
             CharSequence selectedItem = popupView.getCurrentItem(x);
@@ -417,6 +546,7 @@ public abstract class Keyboard extends ViewGroup {
             if (mComposing.length() > 0) {
                 inputConnection.commitText(mComposing, 1);
                 mComposing.setLength(0);
+                invalidateTextCache();
             }
 
             // add composing text for certain medials to avoid confusion with finals
@@ -448,7 +578,10 @@ public abstract class Keyboard extends ViewGroup {
                 inputConnection.setComposingText(YA_FVS1_COMPOSING, 1);
                 mComposing.append(YA_FVS1);
             } else {
-                inputConnection.commitText(selectedItem, 1);
+                commitText(selectedItem);
+            }
+            if (mComposing.length() > 0) {
+                invalidateTextCache();
             }
 
             inputConnection.endBatchEdit();
@@ -457,10 +590,9 @@ public abstract class Keyboard extends ViewGroup {
         }
 
         private void dismissPopup() {
+            // the popup is kept for the next long press
             if (popupWindow != null)
                 popupWindow.dismiss();
-            popupView = null;
-            popupWindow = null;
         }
     };
 
@@ -498,6 +630,7 @@ public abstract class Keyboard extends ViewGroup {
 
         private void doBackspace() {
             if (inputConnection == null) return;
+            invalidateTextCache();
 
             if (mComposing.length() > 0) {
                 inputConnection.commitText("", 1);
@@ -527,6 +660,7 @@ public abstract class Keyboard extends ViewGroup {
 
     };
 
+    // the icons are shared by all of the keyboards, so don't recycle or change them
     protected Bitmap getReturnImage() {
         int imageResourceId;
         if (mKeyImageTheme == KeyImage.Theme.LIGHT) {
@@ -534,7 +668,7 @@ public abstract class Keyboard extends ViewGroup {
         } else {
             imageResourceId = R.drawable.ic_keyboard_return_white_48dp;
         }
-        return BitmapFactory.decodeResource(getResources(), imageResourceId);
+        return KeyIconCache.getIcon(getResources(), imageResourceId);
     }
 
     protected Bitmap getBackspaceImage() {
@@ -544,7 +678,7 @@ public abstract class Keyboard extends ViewGroup {
         } else {
             imageResourceId = R.drawable.ic_keyboard_backspace_white_48dp;
         }
-        return BitmapFactory.decodeResource(getResources(), imageResourceId);
+        return KeyIconCache.getIcon(getResources(), imageResourceId);
     }
 
     protected Bitmap getKeyboardImage() {
@@ -554,76 +688,111 @@ public abstract class Keyboard extends ViewGroup {
         } else {
             imageResourceId = R.drawable.ic_keyboard_white_48dp;
         }
-        return BitmapFactory.decodeResource(getResources(), imageResourceId);
+        return KeyIconCache.getIcon(getResources(), imageResourceId);
     }
 
+    private void commitText(CharSequence text) {
+        // before the commit, since the editor may send the selection update during it
+        mTextCache.beforeCommit(text);
+        if (!inputConnection.commitText(text, 1)) mTextCache.invalidate();
+        if (mTextCache.isValid()) {
+            prepareSuffixCandidates();
+        } else {
+            updateTextCacheLater();
+        }
+    }
+
+    private void invalidateTextCache() {
+        mTextCache.invalidate();
+        // otherwise the selection update will fill it
+        if (!mTextCache.isTrackingCursor()) updateTextCacheLater();
+    }
+
+    // Without selection updates (like for a plain EditText) a cursor move by
+    // the user isn't seen until the next text change.
+    private void updateTextCacheLater() {
+        removeCallbacks(mUpdateTextCache);
+        post(mUpdateTextCache);
+    }
+
+    private void updateTextCache() {
+        if (inputConnection == null || mTextCache.isValid()) return;
+        final int length = CursorTextCache.CONTEXT_LENGTH;
+        mTextCache.set(inputConnection.getTextBeforeCursor(length, 0),
+                inputConnection.getTextAfterCursor(length, 0));
+        prepareSuffixCandidates();
+    }
+
+    // The text getters below only read the text cache. If it hasn't been
+    // filled yet, they act as if there were no text around the cursor.
+
     protected char getPreviousChar() {
-        if (inputConnection == null) return 0;
-        CharSequence previous = inputConnection.getTextBeforeCursor(1, 0);
-        if (TextUtils.isEmpty(previous)) return 0;
-        return previous.charAt(0);
+        if (!mTextCache.isValid()) return 0;
+        return mTextCache.getCharBeforeCursor();
     }
 
     // this may not actually return a whole word if the word is very long
     protected String getPreviousMongolWord() {
-        if (inputConnection == null) return "";
-        int numberOfCharsToFetch = 20;
-        CharSequence previous = inputConnection.getTextBeforeCursor(numberOfCharsToFetch, 0);
+        if (!mTextCache.isValid()) return "";
+        return getLastMongolWord(mTextCache.getTextBeforeCursor(CursorTextCache.CONTEXT_LENGTH));
+    }
+
+    private static String getLastMongolWord(CharSequence previous) {
         if (TextUtils.isEmpty(previous)) return "";
-        int startIndex = previous.length() - 1;
-        char charAtIndex = previous.charAt(startIndex);
-        if (charAtIndex == ' ' || charAtIndex == MongolCode.Uni.NNBS) startIndex--;
-        StringBuilder mongolWord = new StringBuilder();
-        for (int i = startIndex; i >= 0; i--) {
+        int endIndex = previous.length() - 1;
+        char charAtIndex = previous.charAt(endIndex);
+        if (charAtIndex == ' ' || charAtIndex == MongolCode.Uni.NNBS) endIndex--;
+        int startIndex = endIndex + 1;
+        while (startIndex > 0) {
+            charAtIndex = previous.charAt(startIndex - 1);
+            if (charAtIndex == ' ' || charAtIndex == MongolCode.Uni.NNBS) break;
+            startIndex--;
+        }
+        StringBuilder mongolWord = new StringBuilder(endIndex + 1 - startIndex);
+        for (int i = startIndex; i <= endIndex; i++) {
             charAtIndex = previous.charAt(i);
             if (MongolCode.isMongolian(charAtIndex)) {
-                mongolWord.insert(0, charAtIndex);
-            } else if (charAtIndex == ' ' || charAtIndex == MongolCode.Uni.NNBS) {
-                break;
+                mongolWord.append(charAtIndex);
             }
         }
         return mongolWord.toString();
     }
 
+    // Works out the suffix candidates for the word before the cursor on the
+    // candidate executor, so that they are ready if the suffix key is long
+    // pressed. This only uses a copy of the cached text.
+    private void prepareSuffixCandidates() {
+        final Executor executor = mCandidateExecutor;
+        if (executor == null || !mTextCache.isValid()) return;
+        final String previous = mTextCache.getTextBeforeCursor(CursorTextCache.CONTEXT_LENGTH).toString();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final String word = getLastMongolWord(previous);
+                final PopupCandidates candidates = SuffixCandidates.forWord(word);
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mSuffixCandidatesWord = word;
+                        mSuffixCandidates = candidates;
+                    }
+                });
+            }
+        });
+    }
+
     protected PopupCandidates getCandidatesForSuffix() {
         String previousWord = getPreviousMongolWord();
-        if (TextUtils.isEmpty(previousWord)) {
-            return new PopupCandidates(MongolCode.Uni.NNBS);
-        }
-        // TODO if it is a number then return the right suffix for that
-        char lastChar = previousWord.charAt(previousWord.length() - 1);
-        MongolCode.Gender gender = MongolCode.getWordGender(previousWord);
-        if (gender == null) {
-            return new PopupCandidates(MongolCode.Uni.NNBS);
-        }
-        String duTuSuffix = MongolCode.getSuffixTuDu(gender, lastChar);
-        String iYiSuffix = MongolCode.getSuffixYiI(lastChar);
-        String yinUnUSuffix = MongolCode.getSuffixYinUnU(gender, lastChar);
-        String achaSuffix = MongolCode.getSuffixAchaEche(gender);
-        String barIyarSuffix = MongolCode.getSuffixBarIyar(gender, lastChar);
-        String taiSuffix = MongolCode.getSuffixTaiTei(gender);
-        String uuSuffix = MongolCode.getSuffixUu(gender);
-        String banIyanSuffix = MongolCode.getSuffixBanIyan(gender, lastChar);
-        String udSuffix = MongolCode.getSuffixUd(gender);
-
-        String[] unicode = new String[]{
-                "" + MongolCode.Uni.NNBS,
-                uuSuffix,
-                yinUnUSuffix,
-                iYiSuffix,
-                duTuSuffix,
-                barIyarSuffix,
-                banIyanSuffix,
-                achaSuffix,
-                udSuffix};
-        return new PopupCandidates(unicode);
+        if (previousWord.equals(mSuffixCandidatesWord)) {
+            return mSuffixCandidates;
+        }
+        return SuffixCandidates.forWord(previousWord);
     }
 
     protected boolean isIsolateOrInitial() {
-        if (inputConnection == null) return true;
-        CharSequence before = inputConnection.getTextBeforeCursor(2, 0);
-        CharSequence after = inputConnection.getTextAfterCursor(2, 0);
-        if (before == null || after == null) return true;
+        if (!mTextCache.isValid()) return true;
+        CharSequence before = mTextCache.getTextBeforeCursor(2);
+        CharSequence after = mTextCache.getTextAfterCursor(2);
         // get Mongol word location at cursor input
         MongolCode.Location location = MongolCode.getLocation(before, after);
         return location == MongolCode.Location.ISOLATE ||
@@ -651,6 +820,7 @@ public abstract class Keyboard extends ViewGroup {
 
         private String[] unicode;
         private String[] display;
+        private String[] glyphs; // pre-shaped display (or unicode) values
 
         /**
          * Convenience constructor for PopupCandidates(String[] unicode)
@@ -706,6 +876,19 @@ public abstract class Keyboard extends ViewGroup {
         public String[] getDisplay() {
             return display;
         }
+
+        // for candidates that are made once and shown many times
+        void setGlyphs(String[] glyphs) {
+            if (glyphs.length != unicode.length)
+                throw new IllegalArgumentException(
+                        "The number of glyph items must " +
+                                "be the same as the number of unicode items.");
+            this.glyphs = glyphs;
+        }
+
+        String[] getGlyphs() {
+            return glyphs;
+        }
     }
 
 
@@ -18,10 +18,10 @@ import android.widget.PopupWindow;
 import java.util.HashMap;
 import java.util.Map;
 
-public class KeyboardAeiou extends Keyboard {
+public class KeyboardAeiou extends CanvasKeyboard {
 
     // name to use in the keyboard popup chooser
-    private static final String DISPLAY_NAME = "ᠴᠠᠭᠠᠨ ᠲᠣᠯᠤᠭᠠᠢ";
+    public static final String DISPLAY_NAME = "ᠴᠠᠭᠠᠨ ᠲᠣᠯᠤᠭᠠᠢ";
 
     // Row 1
     protected KeyText mKeyA;
@@ -224,8 +224,7 @@ public class KeyboardAeiou extends Keyboard {
         // keyboard
         mKeyKeyboard = new KeyImage(context);
         mKeyKeyboard.setImage(getKeyboardImage());
-        mKeyKeyboard.setOnTouchListener(textKeyTouchListener);
-        addView(mKeyKeyboard);
+        addKey(mKeyKeyboard, textKeyTouchListener);
 
         // comma
         mKeyComma = new KeyText(context);
@@ -242,16 +241,14 @@ public class KeyboardAeiou extends Keyboard {
         // return
         mKeyReturn = new KeyImage(context);
         mKeyReturn.setImage(getReturnImage());
-        mKeyReturn.setOnTouchListener(textKeyTouchListener);
         mKeyValues.put(mKeyReturn, "\n");
         mKeyPunctuationValues.put(mKeyReturn, "\n");
-        addView(mKeyReturn);
+        addKey(mKeyReturn, textKeyTouchListener);
 
         // backspace
         mKeyBackspace = new KeyImage(context);
         mKeyBackspace.setImage(getBackspaceImage());
-        mKeyBackspace.setOnTouchListener(handleBackspace);
-        addView(mKeyBackspace);
+        addKey(mKeyBackspace, handleBackspace);
 
         setDisplayText(mIsShowingPunctuation);
         applyThemeToKeys();
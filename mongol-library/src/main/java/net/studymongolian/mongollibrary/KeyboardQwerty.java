@@ -12,10 +12,10 @@ import java.util.HashMap;
 import java.util.Map;
 
 
-public class KeyboardQwerty extends Keyboard {
+public class KeyboardQwerty extends CanvasKeyboard {
 
     // name to use in the keyboard popup chooser
-    private static final String DISPLAY_NAME = "ᠺᠣᠮᠫᠢᠦ᠋ᠲ᠋ᠧᠷ";
+    public static final String DISPLAY_NAME = "ᠺᠣᠮᠫᠢᠦ᠋ᠲ᠋ᠧᠷ";
 
     // Row 1
     protected KeyText mKeyQ;
@@ -322,16 +322,14 @@ public class KeyboardQwerty extends Keyboard {
         // backspace
         mKeyBackspace = new KeyImage(context);
         mKeyBackspace.setImage(getBackspaceImage());
-        mKeyBackspace.setOnTouchListener(handleBackspace);
-        addView(mKeyBackspace);
+        addKey(mKeyBackspace, handleBackspace);
 
         // Row 4 (7 keys)
 
         // keyboard
         mKeyKeyboard = new KeyImage(context);
         mKeyKeyboard.setImage(getKeyboardImage());
-        mKeyKeyboard.setOnTouchListener(textKeyTouchListener);
-        addView(mKeyKeyboard);
+        addKey(mKeyKeyboard, textKeyTouchListener);
 
         // exclamation
         mKeyExclamation = new KeyText(context);
@@ -362,10 +360,9 @@ public class KeyboardQwerty extends Keyboard {
         // return
         mKeyReturn = new KeyImage(context);
         mKeyReturn.setImage(getReturnImage());
-        mKeyReturn.setOnTouchListener(textKeyTouchListener);
         mKeyValues.put(mKeyReturn, "\n");
         mKeyPunctuationValues.put(mKeyReturn, "\n");
-        addView(mKeyReturn);
+        addKey(mKeyReturn, textKeyTouchListener);
 
 
         setDisplayText(mIsShowingPunctuation);
@@ -569,6 +569,11 @@ public final class MongolCode {
                 || (character >= Uni.MONGOLIAN_NIRUGU && character <= Uni.MVS) || character == Uni.ZWJ);
     }
 
+    // emoji, CJK, etc are rotated when displayed in vertical text
+    static boolean isRotated(int codepoint) {
+        return MongolScriptItemizer.isRotated(codepoint);
+    }
+
     // MVS, FVS, ZWJ
     static boolean isRenderedGlyph(int index, CharSequence someString) {
         final char someChar = someString.charAt(index);
@@ -0,0 +1,300 @@
+package net.studymongolian.mongollibrary;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+// A read-only word list for keyboard suggestions. The words are stored in a
+// trie in a binary file (made by MongolDictionaryBuilder in the test sources)
+// that is memory mapped, so opening a dictionary doesn't read it onto the heap
+// and a lookup only touches the nodes along the prefix and the few nodes with
+// the most frequent words below it.
+//
+// Nothing in the library calls this yet. Apps call getSuggestions() with the
+// word being typed and show the results themselves.
+//
+// The trie is keyed by the words without FVS and MVS characters, so the word
+// that the user is typing matches the dictionary words no matter which
+// variation selectors either of them use. The results have the spelling that
+// was in the word list.
+//
+// File format (big endian):
+//
+//     header:  int magic, int version, int root node offset, int word count
+//     node:    int max frequency (of this node's words and all words below it)
+//              int offset of the first word record (0 if none)
+//              u16 word count, u16 child count
+//              child count x (char label, int child node offset), sorted by label
+//     word:    int frequency, u16 length, length x char
+//
+// The words of a node are stored one after another, most frequent first.
+//
+// A dictionary only reads from the buffer, so it can be used from any thread.
+
+public class MongolDictionary {
+
+    static final int MAGIC = 0x4D444943; // "MDIC"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int NODE_HEADER_SIZE = 12;
+    static final int CHILD_SIZE = 6;
+    static final int WORD_HEADER_SIZE = 6;
+
+    private static final char FVS4 = '\u180F'; // not in Unicode 10.0 but ignore it anyway
+    private static final String[] NO_WORDS = new String[0];
+    private static final long WORD_FLAG = 1L << 31;
+    private static final int OFFSET_MASK = 0x7FFFFFFF;
+
+    private final ByteBuffer mBuffer;
+    private final int mRootOffset;
+    private final int mWordCount;
+
+    /**
+     * @param buffer the dictionary file contents (not copied)
+     */
+    public MongolDictionary(ByteBuffer buffer) {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IllegalArgumentException("MongolDictionary: not a dictionary file");
+        if (buffer.getInt(4) != VERSION)
+            throw new IllegalArgumentException("MongolDictionary: unsupported version " + buffer.getInt(4));
+        mBuffer = buffer;
+        mRootOffset = buffer.getInt(8);
+        mWordCount = buffer.getInt(12);
+    }
+
+    /**
+     * Memory maps a dictionary file.
+     */
+    public static MongolDictionary open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return new MongolDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Memory maps a dictionary from the app assets. The asset can only be
+     * mapped if it isn't compressed in the APK, so add its extension to
+     * aaptOptions { noCompress "dic" } in the app build.gradle. A compressed
+     * asset still works but it is read into memory.
+     */
+    public static MongolDictionary openAsset(Context context, String assetName) throws IOException {
+        AssetFileDescriptor afd;
+        try {
+            afd = context.getAssets().openFd(assetName);
+        } catch (FileNotFoundException e) {
+            // compressed
+            return new MongolDictionary(readFully(context.getAssets().open(assetName)));
+        }
+        FileInputStream stream = afd.createInputStream();
+        try {
+            FileChannel channel = stream.getChannel();
+            return new MongolDictionary(channel.map(FileChannel.MapMode.READ_ONLY,
+                    afd.getStartOffset(), afd.getLength()));
+        } finally {
+            stream.close();
+            afd.close();
+        }
+    }
+
+    private static ByteBuffer readFully(InputStream stream) throws IOException {
+        try {
+            byte[] bytes = new byte[64 * 1024];
+            int length = 0;
+            int read;
+            while ((read = stream.read(bytes, length, bytes.length - length)) != -1) {
+                length += read;
+                if (length == bytes.length) bytes = Arrays.copyOf(bytes, length * 2);
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+            buffer.put(bytes, 0, length);
+            buffer.clear();
+            return buffer;
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * @return the text without FVS and MVS characters (the key that words are looked up by)
+     */
+    public static String normalize(CharSequence text) {
+        StringBuilder builder = null;
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (isIgnored(c)) {
+                if (builder == null) {
+                    builder = new StringBuilder(length);
+                    builder.append(text, 0, i);
+                }
+            } else if (builder != null) {
+                builder.append(c);
+            }
+        }
+        return builder == null ? text.toString() : builder.toString();
+    }
+
+    private static boolean isIgnored(char c) {
+        return (c >= MongolCode.Uni.FVS1 && c <= MongolCode.Uni.MVS) || c == FVS4;
+    }
+
+    public int getWordCount() {
+        return mWordCount;
+    }
+
+    /**
+     * @param word any spelling of the word (FVS and MVS are ignored)
+     * @return the highest frequency of the words with this key, or 0 if there are none
+     */
+    public int getFrequency(CharSequence word) {
+        int node = findNode(word);
+        if (node < 0 || getNodeWordCount(node) == 0) return 0;
+        return mBuffer.getInt(mBuffer.getInt(node + 4));
+    }
+
+    /**
+     * @param prefix   the start of the word that is being typed (FVS and MVS are ignored)
+     * @param maxCount the maximum number of words to return
+     * @return the words that start with the prefix, most frequent first
+     */
+    public String[] getSuggestions(CharSequence prefix, int maxCount) {
+        if (maxCount <= 0) return NO_WORDS;
+        int node = findNode(prefix);
+        if (node < 0) return NO_WORDS;
+
+        // Best first search. The queue has nodes (by the max frequency below
+        // them) and words (by their frequency), so a word comes out only when
+        // nothing left can be more frequent.
+        EntryQueue queue = new EntryQueue();
+        queue.add(mBuffer.getInt(node), node, false);
+        String[] results = new String[maxCount];
+        int count = 0;
+        while (count < maxCount && !queue.isEmpty()) {
+            long entry = queue.poll();
+            int offset = (int) (entry & OFFSET_MASK);
+            if ((entry & WORD_FLAG) != 0) {
+                results[count++] = readWord(offset);
+                continue;
+            }
+            int wordCount = getNodeWordCount(offset);
+            int word = mBuffer.getInt(offset + 4);
+            for (int i = 0; i < wordCount; i++) {
+                queue.add(mBuffer.getInt(word), word, true);
+                word += WORD_HEADER_SIZE + 2 * (mBuffer.getShort(word + 4) & 0xFFFF);
+            }
+            int childCount = getNodeChildCount(offset);
+            int child = offset + NODE_HEADER_SIZE;
+            for (int i = 0; i < childCount; i++) {
+                int childOffset = mBuffer.getInt(child + 2);
+                queue.add(mBuffer.getInt(childOffset), childOffset, false);
+                child += CHILD_SIZE;
+            }
+        }
+        return count == maxCount ? results : Arrays.copyOf(results, count);
+    }
+
+    // returns the offset of the node for the key, or -1 if there isn't one
+    private int findNode(CharSequence key) {
+        int node = mRootOffset;
+        final int length = key.length();
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            if (isIgnored(c)) continue;
+            node = findChild(node, c);
+            if (node < 0) return -1;
+        }
+        return node;
+    }
+
+    private int findChild(int node, char label) {
+        final int children = node + NODE_HEADER_SIZE;
+        int low = 0;
+        int high = getNodeChildCount(node) - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final char midLabel = mBuffer.getChar(children + mid * CHILD_SIZE);
+            if (midLabel < label) {
+                low = mid + 1;
+            } else if (midLabel > label) {
+                high = mid - 1;
+            } else {
+                return mBuffer.getInt(children + mid * CHILD_SIZE + 2);
+            }
+        }
+        return -1;
+    }
+
+    private int getNodeWordCount(int node) {
+        return mBuffer.getShort(node + 8) & 0xFFFF;
+    }
+
+    private int getNodeChildCount(int node) {
+        return mBuffer.getShort(node + 10) & 0xFFFF;
+    }
+
+    private String readWord(int offset) {
+        final int length = mBuffer.getShort(offset + 4) & 0xFFFF;
+        char[] chars = new char[length];
+        int position = offset + WORD_HEADER_SIZE;
+        for (int i = 0; i < length; i++) {
+            chars[i] = mBuffer.getChar(position);
+            position += 2;
+        }
+        return new String(chars);
+    }
+
+    // A max heap of (frequency, offset, is word) packed into longs so that
+    // the search doesn't box anything.
+    private static class EntryQueue {
+        private long[] mHeap = new long[32];
+        private int mSize;
+
+        boolean isEmpty() {
+            return mSize == 0;
+        }
+
+        void add(int frequency, int offset, boolean isWord) {
+            long entry = ((long) frequency << 32) | offset;
+            // words come before nodes with the same frequency
+            if (isWord) entry |= WORD_FLAG;
+            if (mSize == mHeap.length) mHeap = Arrays.copyOf(mHeap, mSize * 2);
+            int i = mSize++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (mHeap[parent] >= entry) break;
+                mHeap[i] = mHeap[parent];
+                i = parent;
+            }
+            mHeap[i] = entry;
+        }
+
+        long poll() {
+            long top = mHeap[0];
+            long last = mHeap[--mSize];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= mSize) break;
+                if (child + 1 < mSize && mHeap[child + 1] > mHeap[child]) child++;
+                if (mHeap[child] <= last) break;
+                mHeap[i] = mHeap[child];
+                i = child;
+            }
+            mHeap[i] = last;
+            return top;
+        }
+    }
+}
@@ -7,7 +7,6 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.Rect;
-import android.os.Handler;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.text.Editable;
@@ -18,6 +17,8 @@ import android.text.SpannableStringBuilder;
 import android.text.Spanned;
 import android.text.TextUtils;
 import android.text.TextWatcher;
+import android.text.style.CharacterStyle;
+import android.text.style.MetricAffectingSpan;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.GestureDetector;
@@ -39,12 +40,22 @@ public class MongolEditText extends MongolTextView {
 
     private Paint mCursorPaint;
     private boolean mCursorVisible = true;
-    private boolean mIsBlinkOn = true;
-    private Handler mBlinkHandler;
-    static final int BLINK = 500;
+    private boolean mIsBlinking; // registered with the CursorBlinker
     static final int CURSOR_WIDTH = 2; // dp
     private static final int CURSOR_DEFAULT_COLOR = Color.parseColor("#4ac3ff"); // blue
     private Path mCursorPath;
+    private int mCursorWidthPx;
+
+    // The cursor and selection geometry is only computed again when the
+    // selection or the lines change, so blinking doesn't measure anything.
+    private final Rect mSelectionStartRect = new Rect(); // also the cursor
+    private final Rect mSelectionEndRect = new Rect();
+    private int mSelectionStartLine;
+    private int mSelectionEndLine;
+    private int mGeometryStart = -1;
+    private int mGeometryEnd = -1;
+    private int mGeometryLineUpdateCount;
+    private boolean needsGeometryUpdate = true;
     private GestureDetector mDetector;
     int mBatchEditNesting = 0;
     private ArrayList<TextWatcher> mListeners;
@@ -81,6 +92,7 @@ public class MongolEditText extends MongolTextView {
         mCursorPaint.setAntiAlias(true);
 
         mCursorPath = new Path();
+        mCursorWidthPx = (int) (CURSOR_WIDTH * getResources().getDisplayMetrics().density);
 
         // allow this view to receive input from keyboard
         setFocusable(true);
@@ -101,10 +113,15 @@ public class MongolEditText extends MongolTextView {
 
             @Override
             public void onTextChanged(CharSequence text, int start, int before, int count) {
-                // TODO just update the layout from the start position rather than everything
-                MongolEditText.super.mLayout.setText(mTextStorage.getGlyphText());
-                invalidate();
-                requestLayout();
+                // only the lines from the edited word on are broken again
+                MongolLayout layout = MongolEditText.super.mLayout;
+                int glyphStart = mTextStorage.getGlyphIndexForWordStart(start);
+                int glyphEnd = mTextStorage.getGlyphIndexForUnicodeIndex(start + count);
+                int firstLine = layout.onTextChanged(mTextStorage.getGlyphText(), glyphStart, glyphEnd);
+                if (hasContentSizeChanged()) {
+                    requestLayout();
+                }
+                invalidate(getPaddingLeft() + layout.getLineBottom(firstLine), 0, getWidth(), getHeight());
 
                 startBlinking();
 
@@ -129,10 +146,26 @@ public class MongolEditText extends MongolTextView {
             @Override
             public void onSpanChanged(Spanned buf, Object what, int oldStart, int newStart, int oldEnd, int newEnd) {
 
-                // TODO only invalidate region affected by the span
-                invalidate();
-                // FIXME only need to request layout for metric affecting spans
-                requestLayout();
+                // let the layout restyle (or reflow) the lines that the span covers
+                if (what == null || what instanceof CharacterStyle) {
+                    int glyphStart = mTextStorage.getGlyphIndexForUnicodeIndex(Math.min(oldStart, newStart));
+                    int glyphEnd = mTextStorage.getGlyphIndexForUnicodeIndex(Math.max(oldEnd, newEnd));
+                    mLayout.onSpanChanged(what, glyphStart, glyphEnd);
+                    if (what == null || what instanceof MetricAffectingSpan) {
+                        if (hasContentSizeChanged()) {
+                            requestLayout();
+                        }
+                        invalidate();
+                    } else {
+                        // only the lines that the span covers are drawn differently
+                        int left = mLayout.getLineBottom(mLayout.getLineForOffset(glyphStart));
+                        int right = mLayout.getLineTop(mLayout.getLineForOffset(glyphEnd));
+                        invalidate(getPaddingLeft() + left, 0, getPaddingLeft() + right, getHeight());
+                    }
+                } else {
+                    // selection spans, etc (the cursor and selection are drawn in onDraw)
+                    invalidate();
+                }
 
 
                 if (isNonIntermediateSelectionSpan(buf, what)) {
@@ -180,9 +213,6 @@ public class MongolEditText extends MongolTextView {
         // for communication to the MongolInputMethodManager
         this.mMongolImeManager = null;
 
-        // init the handler for the blinking cursor
-        mBlinkHandler = new Handler();
-
         // gestures
         mDetector = new GestureDetector(getContext(), new MyListener());
     }
@@ -281,26 +311,21 @@ public class MongolEditText extends MongolTextView {
             final int distanceAwayDp = 40; // dp
             int distanceAwayPx = (int) (distanceAwayDp * getResources().getDisplayMetrics().density);
 
+            // the cached geometry is for the current selection
+            if (!updateCursorGeometry()) return false;
+
             // test if near selection start
-            Rect selectionStart = getCursorRect(start);
-            Rect nearbyStart = new Rect(
-                    selectionStart.left - distanceAwayPx,
-                    selectionStart.top - distanceAwayPx,
-                    selectionStart.right + distanceAwayPx,
-                    selectionStart.bottom + distanceAwayPx);
-            if (nearbyStart.contains(x, y)) return true;
+            if (isNear(mSelectionStartRect, x, y, distanceAwayPx)) return true;
 
             if (end == start) return false;
 
             // test if near selection end
-            Rect selectionEnd = getCursorRect(end);
-            Rect nearbyEnd = new Rect(
-                    selectionEnd.left - distanceAwayPx,
-                    selectionEnd.top - distanceAwayPx,
-                    selectionEnd.right + distanceAwayPx,
-                    selectionEnd.bottom + distanceAwayPx);
-            if (nearbyEnd.contains(x, y)) return true;
-            return false;
+            return isNear(mSelectionEndRect, x, y, distanceAwayPx);
+        }
+
+        private boolean isNear(Rect rect, int x, int y, int distance) {
+            return x >= rect.left - distance && x < rect.right + distance
+                    && y >= rect.top - distance && y < rect.bottom + distance;
         }
 
         @Override
@@ -442,68 +467,91 @@ public class MongolEditText extends MongolTextView {
     @Override
     protected void onDraw(Canvas canvas) {
 
-        int start = getSelectionStart();
-        int end = getSelectionEnd();
-
         // no selection
-        if (start < 0 || end < 0) {
+        if (!updateCursorGeometry()) {
             // if there is no selection then just draw text
             super.onDraw(canvas);
             return;
         }
 
         // draw selection highlight
-        if (start != end) {
-            canvas.drawPath(getSelectionPath(start, end), mCursorPaint);
+        final boolean hasSelection = (mGeometryStart != mGeometryEnd);
+        if (hasSelection) {
+            canvas.drawPath(mCursorPath, mCursorPaint);
         }
 
         // draw text layout next
         super.onDraw(canvas);
 
         // draw the blinking cursor on top
-        if (!mIsBlinkOn && start == end) {
-            canvas.drawRect(getCursorPath(start), mCursorPaint);
+        if (mIsBlinking && !hasSelection && !CursorBlinker.getInstance().isBlinkOn()) {
+            canvas.drawRect(mSelectionStartRect, mCursorPaint);
         }
     }
 
-    private Rect getCursorPath(int cursorLocation) {
-
-        int glyphStart = mTextStorage.getGlyphIndexForUnicodeIndex(cursorLocation);
-        int line = super.mLayout.getLineForOffset(glyphStart);
-        int width = super.mLayout.getLineDescent(line) - super.mLayout.getLineAscent(line);
-        int x = super.mLayout.getLineBottom(line) + getPaddingLeft();
-        int y = (int) super.mLayout.getVertical(glyphStart) + getPaddingTop();
-
-        int cursorWidthPX = (int) (CURSOR_WIDTH * getResources().getDisplayMetrics().density);
-        return new Rect(x, y, x + width, y + cursorWidthPX);
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+        // the padding may have changed
+        needsGeometryUpdate = true;
     }
 
-    private Path getSelectionPath(int unicodeStart, int unicodeEnd) {
+    // Computes the cursor rect and the selection path if the selection or the
+    // lines changed since the last time. Returns false if there is no selection.
+    private boolean updateCursorGeometry() {
 
-        int start;
-        int end;
+        int start = getSelectionStart();
+        int end = getSelectionEnd();
+        if (start < 0 || end < 0) return false;
+        if (start > end) {
+            int temp = start;
+            start = end;
+            end = temp;
+        }
 
-        if (unicodeStart <= unicodeEnd) {
-            start = unicodeStart;
-            end = unicodeEnd;
-        } else {
-            start = unicodeEnd;
-            end = unicodeStart;
+        final int lineUpdateCount = super.mLayout.getLineUpdateCount();
+        if (!needsGeometryUpdate && start == mGeometryStart && end == mGeometryEnd
+                && lineUpdateCount == mGeometryLineUpdateCount) {
+            return true;
         }
+        needsGeometryUpdate = false;
+        mGeometryStart = start;
+        mGeometryEnd = end;
+        mGeometryLineUpdateCount = lineUpdateCount;
+
+        mSelectionStartLine = setCursorRect(mSelectionStartRect, start);
+        if (start == end) {
+            mSelectionEndRect.set(mSelectionStartRect);
+            mSelectionEndLine = mSelectionStartLine;
+            return true;
+        }
+        mSelectionEndLine = setCursorRect(mSelectionEndRect, end);
+        updateSelectionPath();
+        return true;
+    }
+
+    // returns the line of the cursor
+    private int setCursorRect(Rect rect, int unicodeIndex) {
+        int glyphIndex = mTextStorage.getGlyphIndexForUnicodeIndex(unicodeIndex);
+        int line = super.mLayout.getLineForOffset(glyphIndex);
+        int width = super.mLayout.getLineDescent(line) - super.mLayout.getLineAscent(line);
+        int x = super.mLayout.getLineBottom(line) + getPaddingLeft();
+        int y = (int) super.mLayout.getVertical(glyphIndex) + getPaddingTop();
+        rect.set(x, y, x + width, y + mCursorWidthPx);
+        return line;
+    }
+
+    private void updateSelectionPath() {
 
-        // start cursor (could use the getCursorRect() function below)
-        int glyphStart = mTextStorage.getGlyphIndexForUnicodeIndex(start);
-        int lineStart = super.mLayout.getLineForOffset(glyphStart);
-        int widthStart = super.mLayout.getLineDescent(lineStart) - super.mLayout.getLineAscent(lineStart);
-        int xStart = super.mLayout.getLineBottom(lineStart) + getPaddingLeft();
-        int yStart = (int) super.mLayout.getVertical(glyphStart) + getPaddingTop();
+        int lineStart = mSelectionStartLine;
+        int widthStart = mSelectionStartRect.width();
+        int xStart = mSelectionStartRect.left;
+        int yStart = mSelectionStartRect.top;
 
-        // end cursor
-        int glyphEnd = mTextStorage.getGlyphIndexForUnicodeIndex(end);
-        int lineEnd = super.mLayout.getLineForOffset(glyphEnd);
-        int widthEnd = super.mLayout.getLineDescent(lineEnd) - super.mLayout.getLineAscent(lineEnd);
-        int xEnd = super.mLayout.getLineBottom(lineEnd) + getPaddingLeft();
-        int yEnd = (int) super.mLayout.getVertical(glyphEnd) + getPaddingTop();
+        int lineEnd = mSelectionEndLine;
+        int widthEnd = mSelectionEndRect.width();
+        int xEnd = mSelectionEndRect.left;
+        int yEnd = mSelectionEndRect.top;
 
         // create the selection path
         mCursorPath.reset();
@@ -524,18 +572,6 @@ public class MongolEditText extends MongolTextView {
             mCursorPath.lineTo(xStart, getPaddingTop() + mLayout.getHeight());
             mCursorPath.close();
         }
-
-        return mCursorPath;
-    }
-
-    private Rect getCursorRect(int unicodeIndex) {
-        int glyphIndex = mTextStorage.getGlyphIndexForUnicodeIndex(unicodeIndex);
-        int line = super.mLayout.getLineForOffset(glyphIndex);
-        int width = super.mLayout.getLineDescent(line) - super.mLayout.getLineAscent(line);
-        int x = super.mLayout.getLineBottom(line) + getPaddingLeft();
-        int y = (int) super.mLayout.getVertical(glyphIndex) + getPaddingTop();
-
-        return new Rect(x, y, x + width, y + CURSOR_WIDTH);
     }
 
     private boolean shouldBlink() {
@@ -550,45 +586,63 @@ public class MongolEditText extends MongolTextView {
         return start == end;
     }
 
-    // FIXME How do I cancel this when user leaves app? Check logging
-    // alternate the view's background color
-    Runnable mBlink = new Runnable() {
-        @Override
-        public void run() {
-
-            mBlinkHandler.removeCallbacks(mBlink);
-
-            if (shouldBlink()) {
-                if (mLayout != null && !mLayout.getNeedsLineUpdate()) {
-                    //Log.i("TAG", "mBlink: ");
-                    MongolEditText.this.invalidateCursorPath();
-                    //MongolEditText.this.invalidate();
-                    mIsBlinkOn = !mIsBlinkOn;
-                }
-
-                mBlinkHandler.postDelayed(mBlink, BLINK);
-            }
-        }
-    };
-
-    // start the task
+    // Shows the cursor and (re)starts blinking it if it should blink. All of
+    // the edit texts share one timer, which only runs while a cursor blinks.
     void startBlinking() {
-        mBlink.run();
+        if (shouldBlink() && isShown() && hasWindowFocus()) {
+            mIsBlinking = true;
+            CursorBlinker.getInstance().start(this);
+            invalidateCursorPath();
+        } else {
+            stopBlinking();
+        }
     }
 
-    // stop running the task, cancel any current code that is waiting to run
+    // hides the cursor and stops blinking it
     void stopBlinking() {
-        mBlinkHandler.removeCallbacks(mBlink);
+        if (!mIsBlinking) return;
+        mIsBlinking = false;
+        CursorBlinker.getInstance().stop(this);
+        invalidateCursorPath();
     }
 
+    // called by the CursorBlinker on each tick
+    void onBlink() {
+        if (!shouldBlink()) {
+            stopBlinking();
+            return;
+        }
+        invalidateCursorPath();
+    }
 
+    // Uses the cursor rect from the last draw, so it doesn't do any layout
+    // work. If the cursor moved since then, the view is already invalidated.
     private void invalidateCursorPath() {
-        int start = getSelectionStart();
-        if (start < 0) return;
-        Rect cursorPath = getCursorPath(start);
-        invalidate(cursorPath.left, cursorPath.top, cursorPath.right, cursorPath.bottom);
+        Rect cursor = mSelectionStartRect;
+        invalidate(cursor.left, cursor.top, cursor.right, cursor.bottom);
+    }
+
+    @Override
+    public void onWindowFocusChanged(boolean hasWindowFocus) {
+        super.onWindowFocusChanged(hasWindowFocus);
+        if (hasWindowFocus) {
+            startBlinking();
+        } else {
+            stopBlinking();
+        }
     }
 
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        // this can be called before the view is attached (or even initialized)
+        if (getWindowToken() == null) return;
+        if (isShown()) {
+            startBlinking();
+        } else {
+            stopBlinking();
+        }
+    }
 
     @Override
     public void onScreenStateChanged(int screenState) {
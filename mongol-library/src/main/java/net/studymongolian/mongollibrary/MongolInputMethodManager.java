@@ -32,7 +32,7 @@ public class MongolInputMethodManager {
     public MongolInputMethodManager() {
     }
 
-    private List<View> mRegisteredEditors;
+    private List<RegisteredEditor> mRegisteredEditors;
     //private List<View> mRegisteredKeyboards;
     private ImeContainer mImeContainer;
     private int mAllowSystemKeyboard = NO_EDITORS;
@@ -42,6 +42,15 @@ public class MongolInputMethodManager {
     //private KeyboardAeiou mCurrentKeyboard; // TODO change to Keyboard
     private EditorInfo mCurrentEditorInfo;
     private InputConnection mCurrentInputConnection;
+    // so that the system keyboard is only hidden again if it could have been shown
+    private boolean mIsSystemKeyboardHidden;
+    private boolean mIsFocusLeavingMongolEditor;
+    private final Runnable mFocusChangeFinished = new Runnable() {
+        @Override
+        public void run() {
+            mIsFocusLeavingMongolEditor = false;
+        }
+    };
     // Cursor position on the screen.
     Rect mTmpCursorRect = new Rect();
     Rect mCursorRect = new Rect();
@@ -64,10 +73,12 @@ public class MongolInputMethodManager {
 
     public void setAllowSystemSoftInput(int allowSystemKeyboard) {
         this.mAllowSystemKeyboard = allowSystemKeyboard;
+        mIsSystemKeyboardHidden = false;
 
         if (mRegisteredEditors == null || mRegisteredEditors.size() == 0) return;
 
-        for (View editor : mRegisteredEditors) {
+        for (RegisteredEditor entry : mRegisteredEditors) {
+            View editor = entry.view;
             if (editor instanceof EditText) {
                 EditText editText = (EditText) editor;
 
@@ -165,6 +176,7 @@ public class MongolInputMethodManager {
         // TODO what else do I need to do here? When do I call this?
         mCurrentEditor = null;
         mCurrentEditorInfo = null;
+        mCurrentInputConnection = null;
     }
 
 //    public void windowDismissed() {
@@ -211,9 +223,7 @@ public class MongolInputMethodManager {
         }
 
         // don't add the same view twice
-        for (View view : mRegisteredEditors) {
-            if (view == editor) return;
-        }
+        if (getRegisteredEditor(editor) != null) return;
 
         // give the editor's input connection to the keyboard when editor is focused
         editor.setOnFocusChangeListener(focusListener);
@@ -228,32 +238,86 @@ public class MongolInputMethodManager {
         // TODO set allow system keyboard to show if hasn't been set
 
         // add editor
-        mRegisteredEditors.add(editor);
+        mRegisteredEditors.add(new RegisteredEditor(editor));
         mCurrentEditor = editor;
     }
 
+    private RegisteredEditor getRegisteredEditor(View editor) {
+        if (mRegisteredEditors == null) return null;
+        for (RegisteredEditor entry : mRegisteredEditors) {
+            if (entry.view == editor) return entry;
+        }
+        return null;
+    }
+
     private View.OnFocusChangeListener focusListener = new View.OnFocusChangeListener() {
         @Override
         public void onFocusChange(View v, boolean hasFocus) {
-            if (hasFocus) {
-                mCurrentEditor = v;
-                EditorInfo tba = getEditorInfo(v);
-                InputConnection ic = v.onCreateInputConnection(tba);
-                mCurrentEditorInfo = tba;
-                if (mImeContainer != null) {
-                    mImeContainer.setInputConnection(ic);
+            if (!hasFocus) {
+                // The editor getting focus is told right after this (in the
+                // same call) if it is registered. Anything else could show the
+                // system keyboard.
+                if (v instanceof MongolEditText && mIsSystemKeyboardHidden) {
+                    mIsFocusLeavingMongolEditor = true;
+                    v.post(mFocusChangeFinished);
                 }
+                mIsSystemKeyboardHidden = false;
+                return;
+            }
+
+            RegisteredEditor entry = getRegisteredEditor(v);
+            if (entry == null) return;
+            mCurrentEditor = v;
+            updateConnection(entry);
+            updateEditorInfo(entry);
+            mCurrentEditorInfo = entry.editorInfo;
+            mCurrentInputConnection = entry.inputConnection;
+            if (mImeContainer != null) {
+                mImeContainer.setInputConnection(mCurrentInputConnection);
+            }
 
-                if (mAllowSystemKeyboard == SYSTEM_EDITOR_ONLY
-                        && v instanceof MongolEditText) {
+            if (mAllowSystemKeyboard == SYSTEM_EDITOR_ONLY
+                    && v instanceof MongolEditText) {
+                // nothing could have shown it if focus came from another hidden MongolEditText
+                if (!mIsFocusLeavingMongolEditor) {
                     InputMethodManager imm = (InputMethodManager)
                             v.getContext().getSystemService(Activity.INPUT_METHOD_SERVICE);
                     imm.hideSoftInputFromWindow(v.getWindowToken(), 0);
                 }
+                mIsSystemKeyboardHidden = true;
             }
+            mIsFocusLeavingMongolEditor = false;
         }
     };
 
+    // The connection is only created the first time that the editor gets
+    // focus. An EditText also gets a new one if its input type changed
+    // (MongolEditText is always TYPE_CLASS_TEXT).
+    private void updateConnection(RegisteredEditor entry) {
+        if (entry.inputConnection != null) {
+            if (!(entry.view instanceof TextView)) return;
+            if (((TextView) entry.view).getInputType() == entry.editorInfo.inputType) return;
+        }
+        entry.editorInfo = getEditorInfo(entry.view);
+        entry.inputConnection = entry.view.onCreateInputConnection(entry.editorInfo);
+    }
+
+    // the fields that can change while the connection is kept
+    private static void updateEditorInfo(RegisteredEditor entry) {
+        View editor = entry.view;
+        EditorInfo editorInfo = entry.editorInfo;
+        if (editor instanceof TextView) {
+            TextView textView = (TextView) editor;
+            editorInfo.initialSelStart = textView.getSelectionStart();
+            editorInfo.initialSelEnd = textView.getSelectionEnd();
+            editorInfo.imeOptions = textView.getImeOptions();
+        } else if (editor instanceof MongolEditText) {
+            MongolEditText mongolEditText = (MongolEditText) editor;
+            editorInfo.initialSelStart = mongolEditText.getSelectionStart();
+            editorInfo.initialSelEnd = mongolEditText.getSelectionEnd();
+        }
+    }
+
     private EditorInfo getEditorInfo(View view) {
         EditorInfo editorInfo = new EditorInfo();
         editorInfo.packageName = view.getContext().getPackageName();
@@ -261,6 +325,18 @@ public class MongolInputMethodManager {
         return editorInfo;
     }
 
+    // An editor from addEditor() and its connection, which is null until the
+    // editor first gets focus
+    private static class RegisteredEditor {
+        final View view;
+        EditorInfo editorInfo;
+        InputConnection inputConnection;
+
+        RegisteredEditor(View view) {
+            this.view = view;
+        }
+    }
+
     private MongolEditText.OnMongolEditTextInputEventListener mongolEditTextListener =
             new MongolEditText.OnMongolEditTextInputEventListener() {
 
@@ -340,6 +416,10 @@ public class MongolInputMethodManager {
     }
 
     public InputConnection getCurrentInputConnection() {
-        return mCurrentEditor.onCreateInputConnection(mCurrentEditorInfo);
+        RegisteredEditor entry = getRegisteredEditor(mCurrentEditor);
+        if (entry == null) return null;
+        // the cached connection (unless the input type changed)
+        updateConnection(entry);
+        return entry.inputConnection;
     }
 }
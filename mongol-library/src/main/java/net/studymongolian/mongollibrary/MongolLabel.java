@@ -186,6 +186,16 @@ public class MongolLabel extends View {
         requestLayout();
     }
 
+    // for callers that already have the glyphs (from KeyLabelCache)
+    void setText(String unicode, String glyphs) {
+        if (unicode.equals(mUnicodeText)) return;
+
+        mUnicodeText = unicode;
+        mGlyphText = glyphs;
+        invalidate();
+        requestLayout();
+    }
+
     public int getTextColor() {
         return mTextColor;
     }
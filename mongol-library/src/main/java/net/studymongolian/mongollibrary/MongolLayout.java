@@ -3,34 +3,118 @@ package net.studymongolian.mongollibrary;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.Picture;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.os.Build;
 import android.text.Layout;
 import android.text.Spanned;
 import android.text.TextPaint;
 import android.text.TextUtils;
+import android.text.style.CharacterStyle;
+import android.text.style.MetricAffectingSpan;
 import android.view.Gravity;
 
 import org.w3c.dom.Text;
 
-import java.text.BreakIterator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 // lines use width/height in horizontal orientation
 // layout uses width/height in vertical orientation
 
+// A MongolLayout is not thread safe, but it doesn't share any measuring state
+// with other layouts. That means a layout can be created and its lines broken
+// and measured (for example by calling getWidth()) on a background thread and
+// then handed over to the UI thread for drawing, as long as the text and paint
+// are not changed while that is happening.
+
 
 public class MongolLayout {
 
     private CharSequence mText;
+    private int mStart; // only the text from mStart to mEnd is laid out
+    private int mEnd;
     private TextPaint mTextPaint;
     private int mHeight;
     private int mAlignment; // Use Gravity for now
     private float mSpacingMult; // TODO
     private float mSpacingAdd; // TODO
-    private List<LineInfo> mLinesInfo; // = new ArrayList<>();
     private boolean needsLineUpdate = true;
+    private int mKeptLineCount; // lines before an edit that don't need to be updated
+    private int mLineUpdateCount;
+
+    // The line metrics are stored in parallel arrays that are reused (and only
+    // grow) across relayouts. Line i starts at mLineStarts[i]. Its top is the
+    // x distance from the left side of the layout to the right side of the
+    // rotated line, so the tops increase as a sum of the previous (rotated)
+    // line widths. mLineWidths is the measured length of the horizontal line.
+    private int mLineCount;
+    private int[] mLineStarts = new int[INITIAL_LINE_CAPACITY];
+    private int[] mLineTops = new int[INITIAL_LINE_CAPACITY];
+    private float[] mLineWidths = new float[INITIAL_LINE_CAPACITY];
+    private final MongolLineBreaker mLineBreaker = new MongolLineBreaker();
+
+    // finds the rotated (CJK, emoji) chars once per text change rather than
+    // every time a line is set
+    private final MongolScriptItemizer mItemizer = new MongolScriptItemizer();
+    private boolean needsItemization = true;
+
+    // The text between line break opportunities is measured once and cached
+    // here. These measurements only depend on the text and the paint (not the
+    // layout height) so changing the height can reflow the lines without
+    // measuring anything again.
+    private final Segments mSegments = new Segments();
+    private int mDesiredWidth;  // vertical orientation
+    private int mDesiredHeight; // vertical orientation
+    private boolean needsSegmentUpdate = true;
+
+    // After an edit only the paragraphs that it touched are measured for the
+    // desired height. They are compared with the longest paragraph from
+    // before, and everything is only measured again if that one got shorter.
+    private boolean hasDesiredHeight;
+    private float mLongestParagraph;
+    private int mLongestParagraphStart;
+    private int mLongestParagraphEnd;
+    private int mEditEnd = NO_EDIT;    // in the edited text
+    private int mEditLengthChange;
+    private int mEditSegmentCount;
+
+    // Opt-in: the segments of long texts are found and measured a group of
+    // paragraphs at a time on this executor. Only wrapping the measured
+    // segments into lines is done on the calling thread.
+    private ExecutorService mLineBreakExecutor;
+
+    // The lines stop being broken and measured after mMaxLines, so mTextEnd
+    // may be before the end of the text.
+    private int mMaxLines;
+    private TextUtils.TruncateAt mEllipsize;
+    private int mTextEnd;
+    private int mEllipsisStart = NO_ELLIPSIS;
+    private float mEllipsisWidth;
+
+    // reused for measuring so that layout and drawing don't create new objects
+    private final RectF mMeasuredSize = new RectF();
+    private final float[] mMeasuredWidth = new float[1];
+    private final Paint.FontMetrics mFontMetrics = new Paint.FontMetrics();
+    private final Paint.FontMetricsInt mFontMetricsInt = new Paint.FontMetricsInt();
+    private MongolTextLine[] mLineCache = new MongolTextLine[0];
+    private Picture[] mLinePictures = new Picture[0];
+    private int mCachedFirstLine = 0;
+    private int mCachedLastLine = -1;
+    private final Rect mClipBounds = new Rect();
+
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+    private static final int INITIAL_LINE_CAPACITY = 16;
+    private static final int MIN_PARALLEL_TEXT_LENGTH = 8192; // chars
+    private static final int NO_ELLIPSIS = -1;
+    private static final int NO_EDIT = -1;
+    private static final String ELLIPSIS = String.valueOf(MongolCode.Glyph.ELLIPSIS);
 
     private static final char CHAR_SPACE = ' ';
 
@@ -42,15 +126,21 @@ public class MongolLayout {
 
         if (height < 0)
             throw new IllegalArgumentException("Layout: " + height + " < 0");
+        if (maxLines < 0)
+            throw new IllegalArgumentException("Layout: maxLines " + maxLines + " < 0");
 
         mText = text;
+        mStart = start;
+        mEnd = end;
         mTextPaint = paint;
         mHeight = height;
         mAlignment = align;
         mSpacingMult = spacingMult;
         mSpacingAdd = spacingAdd;
+        mMaxLines = maxLines;
 
         needsLineUpdate = true;
+        needsSegmentUpdate = true;
     }
 
 
@@ -75,7 +165,7 @@ public class MongolLayout {
                 next = end;
 
             tl.set(paint, source, i, next);
-            RectF size = tl.measure();
+            RectF size = tl.measure(new RectF());
             float width = size.width(); // horizontal line orientation
             heightSum += size.height(); // horizontal line orientation
 
@@ -95,6 +185,45 @@ public class MongolLayout {
         return new Rect(0, 0, (int) heightSum, (int) longestWidth);
     }
 
+    /**
+     * Same as the static getDesiredSize(), but for the whole text of this layout.
+     * The result is cached until the text or paint changes.
+     *
+     * @return the width needed to display the text with one line per paragraph
+     */
+    public int getDesiredWidth() {
+        measureAllSegments();
+        return mDesiredWidth;
+    }
+
+    /**
+     * With maxLines only the first maxLines paragraphs are measured, since
+     * at this height each paragraph is one line and the rest aren't shown.
+     * After onTextChanged() usually only the edited paragraphs are measured.
+     *
+     * @return the height needed to display the longest paragraph on a single line
+     */
+    public int getDesiredHeight() {
+        if (mMaxLines == Integer.MAX_VALUE) {
+            if (!needsSegmentUpdate && mEditEnd != NO_EDIT) updateDesiredHeightAfterEdit();
+            if (needsSegmentUpdate || !hasDesiredHeight) measureAllSegments();
+            return mDesiredHeight;
+        }
+        if (needsSegmentUpdate) updateSegments(false);
+        final Segments segments = mSegments;
+        MongolTextLine tl = MongolTextLine.obtain();
+        while (segments.paragraphCount < mMaxLines && measureNextSegment(tl)) {
+            // keep measuring
+        }
+        MongolTextLine.recycle(tl);
+        float longest = segments.longestLimitedParagraph;
+        if (segments.paragraphCount < mMaxLines) {
+            // the last paragraph doesn't end with a new line
+            longest = Math.max(longest, segments.paragraphWidth);
+        }
+        return (int) longest;
+    }
+
     /**
      * Draw this Layout on the specified Canvas.
      */
@@ -119,10 +248,8 @@ public class MongolLayout {
 
         if (needsLineUpdate) updateLines();
 
-        // TODO for now draw all the lines. Should we only draw the visible lines?
-        // (see Layout source code)
-        //int firstLine = 0;
-        int lastLine = mLinesInfo.size() - 1;
+        // drawText() only draws the lines that are inside the canvas clip bounds
+        int lastLine = mLineCount - 1;
         if (lastLine < 0) return;
 
 //        drawBackground(canvas, highlight, highlightPaint, cursorOffsetVertical,
@@ -137,26 +264,34 @@ public class MongolLayout {
         if (needsLineUpdate) updateLines();
 
         float metricsTop;
-        int metricsBottom = mTextPaint.getFontMetricsInt().bottom;
-
-        int x = metricsBottom; // start position of each vertical line
+        mTextPaint.getFontMetricsInt(mFontMetricsInt);
+        int metricsBottom = mFontMetricsInt.bottom;
+
+        // Only the lines inside the clip bounds are drawn (and only they are
+        // set and cached). When the view is in a HorizontalScrollView that is
+        // the visible part of the text plus a line on either side for any
+        // glyphs that overhang their line.
+        if (mLineCount == 0 || !canvas.getClipBounds(mClipBounds)) return;
+        int firstLine = Math.max(0, getLineForHorizontal(mClipBounds.left) - 1);
+        int lastLine = Math.min(mLineCount - 1, getLineForHorizontal(mClipBounds.right) + 1);
+
+        int x = metricsBottom + getLineBottom(firstLine); // start position of each vertical line
         int y = 0; // baseline
-        MongolTextLine tl = MongolTextLine.obtain();
+        boolean useDisplayLists = canUseDisplayLists(canvas);
 
         // draw the lines one at a time
-        int lastLine = mLinesInfo.size() - 1;
-        for (int i = 0; i <= lastLine; i++) {
-            int start = mLinesInfo.get(i).startOffset;
+        for (int i = firstLine; i <= lastLine; i++) {
+            int start = mLineStarts[i];
             int end;
-            if (i < lastLine) {
-                end = mLinesInfo.get(i + 1).startOffset;
+            if (i < mLineCount - 1) {
+                end = mLineStarts[i + 1];
             } else {
-                end = mText.length();
+                end = mTextEnd;
             }
 
             float gravityOffset = 0;
             if (mAlignment != Gravity.TOP) {
-                float textWidth = mLinesInfo.get(i).measuredWidth;
+                float textWidth = mLineWidths[i];
                 int verticalGravity = mAlignment & Gravity.VERTICAL_GRAVITY_MASK;
                 if (verticalGravity == Gravity.CENTER_VERTICAL) {
                     gravityOffset = (mHeight - textWidth) / 2;
@@ -166,20 +301,163 @@ public class MongolLayout {
                 if (gravityOffset < 0) gravityOffset = 0;
             }
 
-            tl.set(mTextPaint, mText, start, end);
+            boolean isEllipsized = (i == mLineCount - 1 && mEllipsisStart != NO_ELLIPSIS);
+            if (isEllipsized) end = mEllipsisStart;
+
             int lineHeight;
             if (i > 0) {
-                lineHeight = mLinesInfo.get(i).top - mLinesInfo.get(i - 1).top;
+                lineHeight = mLineTops[i] - mLineTops[i - 1];
             } else {
-                lineHeight = mLinesInfo.get(i).top;
+                lineHeight = mLineTops[i];
             }
             metricsTop = metricsBottom - lineHeight;
-            tl.draw(canvas, x, metricsTop, y + gravityOffset, metricsBottom);
+
+            if (useDisplayLists) {
+                Picture picture = getLinePicture(i, start, end, metricsTop, metricsBottom,
+                        lineHeight, isEllipsized);
+                canvas.save();
+                canvas.translate(x - metricsBottom, y + gravityOffset);
+                canvas.drawPicture(picture);
+                canvas.restore();
+            } else {
+                drawLine(canvas, i, start, end, x, metricsTop, y + gravityOffset,
+                        metricsBottom, isEllipsized);
+            }
 
             x += lineHeight;
         }
 
-        MongolTextLine.recycle(tl);
+        // keep the lines a viewport to either side so that scrolling back and
+        // forth doesn't set them again, but release everything else
+        int margin = lastLine - firstLine + 1;
+        releaseCachedLinesOutside(firstLine - margin, lastLine + margin, firstLine, lastLine);
+    }
+
+    // mCachedFirstLine and mCachedLastLine enclose all of the lines that might
+    // have a cached MongolTextLine or Picture.
+    private void releaseCachedLinesOutside(int first, int last, int drawnFirst, int drawnLast) {
+        if (mCachedFirstLine > mCachedLastLine) {
+            mCachedFirstLine = drawnFirst;
+            mCachedLastLine = drawnLast;
+            return;
+        }
+        if (mCachedFirstLine < first) {
+            clearLineCache(mCachedFirstLine, first - 1);
+            mCachedFirstLine = first;
+        }
+        if (mCachedLastLine > last) {
+            clearLineCache(last + 1, mCachedLastLine);
+            mCachedLastLine = last;
+        }
+        mCachedFirstLine = Math.min(mCachedFirstLine, drawnFirst);
+        mCachedLastLine = Math.max(mCachedLastLine, drawnLast);
+    }
+
+    private void clearAllCachedLines() {
+        clearLineCache(0, Math.max(mLineCache.length, mLinePictures.length) - 1);
+        mCachedFirstLine = 0;
+        mCachedLastLine = -1;
+    }
+
+    private void drawLine(Canvas canvas, int line, int start, int end, float x,
+                          float top, float y, int bottom, boolean isEllipsized) {
+        MongolTextLine tl = getCachedLine(line, start, end);
+        tl.draw(canvas, x, top, y, bottom);
+
+        if (isEllipsized) {
+            float ellipsisOffset = mLineWidths[line] - mEllipsisWidth;
+            tl = MongolTextLine.obtain();
+            tl.set(mTextPaint, ELLIPSIS, 0, ELLIPSIS.length());
+            tl.draw(canvas, x, top, y + ellipsisOffset, bottom);
+            MongolTextLine.recycle(tl);
+        }
+    }
+
+    // Canvas.drawPicture() isn't supported by hardware accelerated canvases
+    // before API 23. Software canvases don't gain anything from replaying a
+    // picture, so they just draw the lines directly.
+    private static boolean canUseDisplayLists(Canvas canvas) {
+        return canvas.isHardwareAccelerated()
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+    }
+
+    // The drawing commands of a line are recorded the first time it is drawn so
+    // that later frames (cursor blinks, scrolling, etc) just replay them. The
+    // picture is recorded with the left side of the line at x = 0 and without
+    // the gravity offset, so it stays valid when the line only moves.
+    private Picture getLinePicture(int line, int start, int end, float top, int bottom,
+                                   int lineHeight, boolean isEllipsized) {
+        if (line >= mLinePictures.length) {
+            mLinePictures = Arrays.copyOf(mLinePictures, Math.max(line + 1, mLinePictures.length * 2));
+        }
+        Picture picture = mLinePictures[line];
+        if (picture == null) {
+            picture = new Picture();
+            int length = (int) Math.ceil(mLineWidths[line]) + 1;
+            Canvas recordingCanvas = picture.beginRecording(lineHeight, length);
+            drawLine(recordingCanvas, line, start, end, bottom, top, 0, bottom, isEllipsized);
+            picture.endRecording();
+            mLinePictures[line] = picture;
+        }
+        return picture;
+    }
+
+    // A line is set (which measures its runs and resolves their span styles)
+    // the first time it is drawn. After that it is kept until the lines are
+    // updated or a span or paint change clears it.
+    private MongolTextLine getCachedLine(int line, int start, int end) {
+        if (line >= mLineCache.length) {
+            mLineCache = Arrays.copyOf(mLineCache, Math.max(line + 1, mLineCache.length * 2));
+        }
+        MongolTextLine tl = mLineCache[line];
+        if (tl == null) {
+            tl = MongolTextLine.obtain();
+            tl.set(mTextPaint, mText, start, end, getItemizer());
+            mLineCache[line] = tl;
+        }
+        return tl;
+    }
+
+    private void clearLineCache(int firstLine, int lastLine) {
+        int last = Math.min(lastLine, mLineCache.length - 1);
+        for (int i = firstLine; i <= last; i++) {
+            if (mLineCache[i] != null) {
+                MongolTextLine.recycle(mLineCache[i]);
+                mLineCache[i] = null;
+            }
+        }
+        last = Math.min(lastLine, mLinePictures.length - 1);
+        for (int i = firstLine; i <= last; i++) {
+            mLinePictures[i] = null;
+        }
+    }
+
+    /**
+     * Call this after a span has been added to, removed from or changed in the text.
+     * Spans that affect the size of the text cause the lines to be reflowed. Other
+     * character styles (like color) only cause the affected lines to be restyled.
+     *
+     * @param what  the span or null if all spans were cleared
+     * @param start the glyph index where the change starts
+     * @param end   the glyph index where the change ends
+     */
+    public void onSpanChanged(Object what, int start, int end) {
+        if (what == null || what instanceof MetricAffectingSpan) {
+            reflowLines();
+            return;
+        }
+        // selection and composing spans, etc. don't change how the text looks
+        if (!(what instanceof CharacterStyle)) return;
+        if (needsLineUpdate || mLineCount == 0) return;
+        clearLineCache(getLineForOffset(start), getLineForOffset(end));
+    }
+
+    /**
+     * Call this if a paint property that doesn't affect the size of the text
+     * (like the text color) has changed.
+     */
+    public void invalidateDrawState() {
+        clearAllCachedLines();
     }
 
 
@@ -195,48 +473,247 @@ public class MongolLayout {
         return needsLineUpdate;
     }
 
+    // Breaks the lines if needed. The count changes every time the lines are
+    // broken, so a view can tell if positions it got from the layout are stale.
+    int getLineUpdateCount() {
+        if (needsLineUpdate) updateLines();
+        return mLineUpdateCount;
+    }
+
+    // The text between line break opportunities is measured lazily, one segment
+    // at a time, so that a layout limited by maxLines only measures the text it
+    // displays. The paragraph sizes (for getDesiredWidth/Height) are calculated
+    // in the same pass.
+    private void updateSegments(boolean willMeasureAll) {
+        needsSegmentUpdate = false;
+        hasDesiredHeight = false;
+        mEditEnd = NO_EDIT;
+        mSegments.reset(mText, mTextPaint, getItemizer(), mStart, mEnd);
+        mSegments.setParagraphLimit(mMaxLines);
+        if (willMeasureAll && mLineBreakExecutor != null && mMaxLines == Integer.MAX_VALUE
+                && mEnd - mStart >= MIN_PARALLEL_TEXT_LENGTH) {
+            measureSegmentsInParallel();
+        }
+    }
+
+    private void measureAllSegments() {
+        if (needsSegmentUpdate) updateSegments(true);
+        if (mSegments.isComplete) return;
+        MongolTextLine tl = MongolTextLine.obtain();
+        while (measureNextSegment(tl)) {
+            // keep measuring
+        }
+        MongolTextLine.recycle(tl);
+    }
+
+    // returns false if all of the segments have already been measured
+    private boolean measureNextSegment(MongolTextLine tl) {
+        if (mSegments.isComplete) return false;
+        if (mSegments.measureNext(tl)) return true;
+        finishMeasuringSegments();
+        return false;
+    }
+
+    // Paragraphs don't affect each other's line break opportunities, so the
+    // text is divided at new line characters into about one chunk per core.
+    // If anything goes wrong the segments are just measured serially instead.
+    private void measureSegmentsInParallel() {
+        final int length = mEnd - mStart;
+        final int chunkLength = length / Runtime.getRuntime().availableProcessors();
+        List<ParagraphChunk> chunks = new ArrayList<>();
+        int start = mStart;
+        while (start < mEnd) {
+            int end = TextUtils.indexOf(mText, '\n', Math.min(start + chunkLength, mEnd - 1), mEnd);
+            end = (end < 0) ? mEnd : end + 1;
+            chunks.add(new ParagraphChunk(mText, mTextPaint, mItemizer, start, end));
+            start = end;
+        }
+        if (chunks.size() < 2) return;
+
+        // the tasks only read from the itemizer
+        getItemizer().itemizeUntil(mEnd);
+
+        try {
+            List<Future<Segments>> results = mLineBreakExecutor.invokeAll(chunks);
+            for (Future<Segments> result : results) {
+                mSegments.append(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            mSegments.reset(mText, mTextPaint, getItemizer(), mStart, mEnd);
+            return;
+        } catch (ExecutionException e) {
+            mSegments.reset(mText, mTextPaint, getItemizer(), mStart, mEnd);
+            return;
+        }
+        finishMeasuringSegments();
+    }
+
+    private void finishMeasuringSegments() {
+        final Segments segments = mSegments;
+        segments.isComplete = true;
+
+        if (segments.paragraphWidth > segments.longestParagraph) {
+            // the last paragraph doesn't end with a new line
+            setLongestParagraph(segments.paragraphWidth, segments.paragraphStart, mEnd);
+        } else {
+            setLongestParagraph(segments.longestParagraph,
+                    segments.longestParagraphStart, segments.longestParagraphEnd);
+        }
+        float heightSum = segments.paragraphHeightSum + segments.paragraphHeight;
+        if (heightSum == 0) {
+            heightSum = getDefaultLineHeight();
+        }
+
+        // swapping width and height for the vertical orientation
+        mDesiredWidth = (int) heightSum;
+    }
+
+    private void setLongestParagraph(float width, int start, int end) {
+        mLongestParagraph = width;
+        mLongestParagraphStart = start;
+        mLongestParagraphEnd = end;
+        mDesiredHeight = (int) width;
+        hasDesiredHeight = true;
+        mEditEnd = NO_EDIT;
+    }
+
+    // Measures the paragraphs from the one where the edit starts to the one
+    // that contains the end of the changed text. If the longest paragraph
+    // from before the edit was among them and got shorter, hasDesiredHeight
+    // stays false and the rest of the text has to be measured, too.
+    private void updateDesiredHeightAfterEdit() {
+        final int editEnd = mEditEnd;
+        mEditEnd = NO_EDIT;
+        hasDesiredHeight = false;
+        final Segments segments = mSegments;
+        // the segments after the edit were measured by something else already
+        if (segments.count != mEditSegmentCount || segments.isComplete) return;
+
+        final int editedStart = segments.paragraphStart;
+        float editedLongest = 0;
+        int editedLongestStart = editedStart;
+        int editedLongestEnd = editedStart;
+        MongolTextLine tl = MongolTextLine.obtain();
+        while (segments.paragraphStart <= editEnd) {
+            final int paragraphStart = segments.paragraphStart;
+            final float widthBefore = segments.paragraphWidth;
+            if (!measureNextSegment(tl)) {
+                // the edited paragraphs go to the end of the text, so everything was measured
+                MongolTextLine.recycle(tl);
+                return;
+            }
+            if (segments.paragraphStart == paragraphStart) continue;
+            final float width = widthBefore + segments.widths[segments.count - 1];
+            if (width > editedLongest) {
+                editedLongest = width;
+                editedLongestStart = paragraphStart;
+                editedLongestEnd = segments.paragraphStart;
+            }
+        }
+        MongolTextLine.recycle(tl);
+
+        // where the measured paragraphs were before the edit
+        final int lengthChange = mEditLengthChange;
+        final int oldEditedEnd = segments.paragraphStart - lengthChange;
+        boolean wasLongestEdited = mLongestParagraphStart < oldEditedEnd
+                && mLongestParagraphEnd > editedStart;
+        if (wasLongestEdited && editedLongest < mLongestParagraph) return;
+        if (wasLongestEdited || editedLongest > mLongestParagraph) {
+            setLongestParagraph(editedLongest, editedLongestStart, editedLongestEnd);
+        } else if (mLongestParagraphStart >= oldEditedEnd) {
+            setLongestParagraph(mLongestParagraph, mLongestParagraphStart + lengthChange,
+                    mLongestParagraphEnd + lengthChange);
+        } else {
+            hasDesiredHeight = true;
+        }
+    }
+
+    // standard line height when there is no text to measure
+    private float getDefaultLineHeight() {
+        mTextPaint.getFontMetrics(mFontMetrics);
+        return mFontMetrics.bottom - mFontMetrics.top;
+    }
+
     private void updateLines() {
 
         needsLineUpdate = false;
+        mLineUpdateCount++;
+        mTextEnd = mEnd;
+        mEllipsisStart = NO_ELLIPSIS;
+        int keptLines = mKeptLineCount;
+        mKeptLineCount = 0;
+
+        if (needsSegmentUpdate) updateSegments(mMaxLines == Integer.MAX_VALUE);
+        final Segments segments = mSegments;
+
+        // after an edit, continue from the first line that may have changed
+        int segment = 0;
+        int start = mStart;
+        int top = 0; // cumulative sum of line heights
+        if (keptLines > 0 && mEnd > mStart) {
+            final int resumeSegment = segments.indexOfStart(mLineStarts[keptLines]);
+            if (resumeSegment >= 0) {
+                segment = resumeSegment;
+                start = mLineStarts[keptLines];
+                top = mLineTops[keptLines - 1];
+            } else {
+                keptLines = 0;
+            }
+        } else {
+            keptLines = 0;
+        }
 
-        if (mLinesInfo == null || mLinesInfo.size() > 0)
-            mLinesInfo = new ArrayList<>();
+        if (keptLines > 0) {
+            clearLineCache(keptLines, Math.max(mLineCache.length, mLinePictures.length) - 1);
+        } else {
+            clearAllCachedLines();
+        }
+        mLineCount = keptLines;
 
-        if (mText.length() == 0) {
-            int defaultHeight = mTextPaint.getFontMetricsInt().bottom - mTextPaint.getFontMetricsInt().top;
-            mLinesInfo.add(new LineInfo(0, defaultHeight, 0));
+        if (mEnd == mStart) {
+            mTextPaint.getFontMetricsInt(mFontMetricsInt);
+            int defaultHeight = mFontMetricsInt.bottom - mFontMetricsInt.top;
+            addLine(mStart, defaultHeight, 0);
             return;
         }
 
-        // XXX can we just use a char sequence? BreakIterator is the only thing that needs a String.
-
-        BreakIterator boundary = BreakIterator.getLineInstance();
-        boundary.setText(mText.toString());
-        int start = boundary.first();
         int lineStart = start;
         float measuredSum = 0;
+        float segmentWidth;
+        float segmentHeight;
         RectF measuredSize;
-        int top = 0; // cumulative sum of line heights
         float lineHeightMax = 0;
         boolean hadToSplitWord = false;
+        boolean isTruncated = false;
         MongolTextLine tl = MongolTextLine.obtain();
-        for (int end = boundary.next(); end != BreakIterator.DONE; ) {
+        while (segment < segments.count || measureNextSegment(tl)) {
+
+            // stop breaking and measuring lines that won't be displayed
+            if (mLineCount >= mMaxLines) {
+                isTruncated = true;
+                break;
+            }
 
-            boolean forceNewLine = false;
-            if (mText.charAt(end - 1) == '\n') {
-                forceNewLine = true;
-                tl.set(mTextPaint, mText, start, end - 1);
+            int end = segments.ends[segment];
+            boolean forceNewLine = (mText.charAt(end - 1) == '\n');
+            if (start == segments.getStart(segment)) {
+                segmentWidth = segments.widths[segment];
+                segmentHeight = segments.heights[segment];
             } else {
-                tl.set(mTextPaint, mText, start, end);
+                // only the remainder of a word that was split needs to be measured again
+                tl.set(mTextPaint, mText, start, forceNewLine ? end - 1 : end, getItemizer());
+                measuredSize = tl.measure(mMeasuredSize);
+                segmentWidth = measuredSize.width();
+                segmentHeight = measuredSize.height();
             }
-            measuredSize = tl.measure();
 
-            if (Math.floor(measuredSize.width()) > mHeight) {
+            if (Math.floor(segmentWidth) > mHeight) {
 
                 // add previously measured text as a new line
                 if (measuredSum > 0) {
                     top += lineHeightMax;
-                    mLinesInfo.add(new LineInfo(lineStart, top, measuredSum));
+                    addLine(lineStart, top, measuredSum);
                     lineHeightMax = 0;
                     measuredSum = 0;
                 }
@@ -244,49 +721,49 @@ public class MongolLayout {
                 // There were no natural line wrap boundaries shorter than the wrap height
                 // so we have to split the word unnaturally across lines.
                 lineStart = start;
-                float[] measuredWidth = new float[1];
+                float[] measuredWidth = mMeasuredWidth;
                 // FIXME this doesn't handle spanned text, does it? Should add a breakText method to TextLine.
                 int charactersMeasured = mTextPaint.breakText(mText, lineStart, end, true, mHeight, measuredWidth);
                 if (charactersMeasured > 0) {
-                    top += measuredSize.height();
-                    mLinesInfo.add(new LineInfo(lineStart, top, measuredWidth[0]));
+                    top += segmentHeight;
+                    addLine(lineStart, top, measuredWidth[0]);
                     lineStart += charactersMeasured;
                 } else {
                     // if mHeight is shorter than a single character then just add that char to the line
-                    mLinesInfo.add(new LineInfo(lineStart, mHeight, measuredSize.height()));
+                    addLine(lineStart, mHeight, segmentHeight);
                     lineStart++;
                 }
                 hadToSplitWord = true;
 
-            } else if (Math.floor(measuredSum + measuredSize.width()) > mHeight) {
+            } else if (Math.floor(measuredSum + segmentWidth) > mHeight) {
 
                 top += lineHeightMax;
-                mLinesInfo.add(new LineInfo(lineStart, top, measuredSum));
-                lineHeightMax = measuredSize.height();
+                addLine(lineStart, top, measuredSum);
+                lineHeightMax = segmentHeight;
                 lineStart = start;
-                measuredSum = measuredSize.width();
+                measuredSum = segmentWidth;
 
             } else {
-                measuredSum += measuredSize.width();
-                lineHeightMax = Math.max(lineHeightMax, measuredSize.height());
+                measuredSum += segmentWidth;
+                lineHeightMax = Math.max(lineHeightMax, segmentHeight);
             }
 
             // handle spaces at the end of split lines
             // TODO still need to handle spaces at the end of normal lines. They shouldn't even be measured
             if (hadToSplitWord) {
-                if (lineStart < mText.length() && mText.charAt(lineStart) == CHAR_SPACE) {
+                if (lineStart < mEnd && mText.charAt(lineStart) == CHAR_SPACE) {
                     // don't let a single trailing space make an empty blank next line
                     lineStart++;
                 }
                 start = lineStart;
-                if (start == end) {
-                    end = boundary.next();
+                if (start >= end) {
+                    segment++;
                 }
                 hadToSplitWord = false;
                 forceNewLine = false;
             } else {
                 start = end;
-                end = boundary.next();
+                segment++;
             }
 
             // handle new line characters
@@ -294,10 +771,10 @@ public class MongolLayout {
                 if (lineHeightMax == 0) {
                     // using the standard line height
                     // TODO should be using a different height if there is a span
-                    lineHeightMax = mTextPaint.getFontMetrics().bottom - mTextPaint.getFontMetrics().top;
+                    lineHeightMax = getDefaultLineHeight();
                 }
                 top += lineHeightMax;
-                mLinesInfo.add(new LineInfo(lineStart, top, measuredSum));
+                addLine(lineStart, top, measuredSum);
                 lineHeightMax = 0;
                 measuredSum = 0;
                 lineStart = start;
@@ -305,15 +782,81 @@ public class MongolLayout {
         }
 
         // add any last line info
-        if (measuredSum > 0 || (mText.length() > 0 && mText.charAt(mText.length() - 1) == '\n')) {
+        if (!isTruncated && (measuredSum > 0
+                || (mEnd > mStart && mText.charAt(mEnd - 1) == '\n'))) {
             if (lineHeightMax == 0) {
                 // using the standard line height
                 // TODO should be using a different height if there is a span
-                lineHeightMax = mTextPaint.getFontMetrics().bottom - mTextPaint.getFontMetrics().top;
+                lineHeightMax = getDefaultLineHeight();
             }
             top += lineHeightMax;
-            mLinesInfo.add(new LineInfo(lineStart, top, measuredSum));
+            addLine(lineStart, top, measuredSum);
+        }
+
+        // the text may still have gone one line over while splitting a long word
+        if (mLineCount > mMaxLines) {
+            isTruncated = true;
+            lineStart = mLineStarts[mMaxLines];
+            mLineCount = mMaxLines;
+        }
+
+        if (isTruncated) {
+            mTextEnd = lineStart;
+            if (mEllipsize == TextUtils.TruncateAt.END && mTextEnd < mEnd
+                    && mLineCount > 0) {
+                ellipsizeLastLine(tl);
+            }
+        }
+        MongolTextLine.recycle(tl);
+    }
+
+    // replaces the end of the last line with an ellipsis
+    private void ellipsizeLastLine(MongolTextLine tl) {
+        final int lastLine = mLineCount - 1;
+        final int lineStart = mLineStarts[lastLine];
+
+        // don't keep trailing spaces or new lines before the ellipsis
+        int ellipsisStart = mTextEnd;
+        while (ellipsisStart > lineStart && Character.isWhitespace(mText.charAt(ellipsisStart - 1))) {
+            ellipsisStart--;
+        }
+
+        mEllipsisWidth = mTextPaint.measureText(ELLIPSIS);
+        float availableWidth = Math.max(0, mHeight - mEllipsisWidth);
+        tl.set(mTextPaint, mText, lineStart, ellipsisStart, getItemizer());
+        float textWidth = tl.measure(mMeasuredSize).width();
+        if (textWidth > availableWidth) {
+            float[] measuredWidth = mMeasuredWidth;
+            // FIXME this doesn't handle spanned text either
+            int charactersMeasured = mTextPaint.breakText(mText, lineStart, ellipsisStart,
+                    true, availableWidth, measuredWidth);
+            ellipsisStart = lineStart + charactersMeasured;
+            textWidth = measuredWidth[0];
+        }
+
+        mEllipsisStart = ellipsisStart;
+        mLineWidths[lastLine] = textWidth + mEllipsisWidth;
+    }
+
+    private MongolScriptItemizer getItemizer() {
+        if (needsItemization) {
+            needsItemization = false;
+            mItemizer.setText(mText);
+        }
+        return mItemizer;
+    }
+
+    private void addLine(int start, int top, float measuredWidth) {
+        if (mLineCount == mLineStarts.length) {
+            final int newCapacity = mLineCount * 2;
+            mLineStarts = Arrays.copyOf(mLineStarts, newCapacity);
+            mLineTops = Arrays.copyOf(mLineTops, newCapacity);
+            mLineWidths = Arrays.copyOf(mLineWidths, newCapacity);
         }
+        mLineStarts[mLineCount] = start;
+        mLineTops[mLineCount] = top;
+        mLineWidths[mLineCount] = measuredWidth;
+        mLineCount++;
     }
 
     /**
@@ -321,11 +864,139 @@ public class MongolLayout {
      */
     public void reflowLines() {
         needsLineUpdate = true;
+        needsSegmentUpdate = true;
+        mKeptLineCount = 0;
+    }
+
+    /**
+     * Call this instead of setText() when the text object was edited in place.
+     * Only the lines from the one before the edit on are broken again. The
+     * earlier lines keep their measurements and cached drawing.
+     *
+     * @param text        the edited text
+     * @param changeStart the glyph index where the changed glyphs start
+     * @return the first line that may have changed
+     */
+    public int onTextChanged(CharSequence text, int changeStart) {
+        return onTextChanged(text, changeStart, text.length());
+    }
+
+    /**
+     * Same as onTextChanged(CharSequence, int), but the end of the changed
+     * glyphs is known, too, so the desired height only needs the paragraphs
+     * from changeStart to changeEnd to be measured again.
+     *
+     * @param text        the edited text
+     * @param changeStart the glyph index where the changed glyphs start
+     * @param changeEnd   the glyph index after the changed glyphs in the edited text
+     * @return the first line that may have changed
+     */
+    public int onTextChanged(CharSequence text, int changeStart, int changeEnd) {
+        if (text != mText || needsSegmentUpdate || mStart != 0) {
+            setText(text);
+            return 0;
+        }
+        final int oldEnd = mEnd;
+        mEnd = mText.length();
+
+        // A line can also change if the start of the next line changed (more of
+        // it might fit now), so the line before the edit isn't kept either.
+        int keptLines = 0;
+        if (mLineCount > 0 && (!needsLineUpdate || mKeptLineCount > 0)) {
+            keptLines = Math.max(0, getLineForOffset(changeStart) - 1);
+            if (needsLineUpdate) keptLines = Math.min(keptLines, mKeptLineCount);
+        }
+        mKeptLineCount = keptLines;
+
+        if (!needsItemization) mItemizer.truncate(changeStart);
+        mSegments.truncate(changeStart, mEnd);
+        needsLineUpdate = true;
+
+        // only one edit is remembered for the desired height
+        if (hasDesiredHeight && mEditEnd == NO_EDIT) {
+            mEditEnd = Math.max(changeStart, changeEnd);
+            mEditLengthChange = mEnd - oldEnd;
+            mEditSegmentCount = mSegments.count;
+        } else {
+            hasDesiredHeight = false;
+            mEditEnd = NO_EDIT;
+        }
+        return keptLines;
+    }
+
+    /**
+     * Opt-in for long texts. The line break opportunities of groups of paragraphs
+     * are found and measured as separate tasks on the executor, so the first
+     * layout of a large document can use more than one core. The calling thread
+     * waits for the tasks to finish. Not used when the lines are limited by
+     * maxLines since then usually only the beginning of the text is measured.
+     *
+     * @param executor the executor to measure with or null to measure everything
+     *                 on the calling thread (the default)
+     */
+    public void setLineBreakExecutor(ExecutorService executor) {
+        mLineBreakExecutor = executor;
     }
 
     public void setText(CharSequence text) {
+        // the same text object may have been edited so it always has to be itemized again
+        needsItemization = true;
+        setText(text, 0, text.length());
+    }
+
+    /**
+     * Only lays out part of the text. The line offsets are still indexes in the
+     * whole text.
+     *
+     * @param text  the glyph text
+     * @param start the index of the first char to lay out
+     * @param end   the index after the last char to lay out
+     */
+    public void setText(CharSequence text, int start, int end) {
+        if (text != mText) needsItemization = true;
         mText = text;
+        mStart = start;
+        mEnd = end;
+        needsLineUpdate = true;
+        needsSegmentUpdate = true;
+        mKeptLineCount = 0;
+    }
+
+    /**
+     * Lines after maxLines are not broken, measured or drawn.
+     *
+     * @param maxLines the maximum number of vertical lines, Integer.MAX_VALUE for no limit
+     */
+    public void setMaxLines(int maxLines) {
+        if (maxLines < 0)
+            throw new IllegalArgumentException("Layout: maxLines " + maxLines + " < 0");
+        if (maxLines == mMaxLines)
+            return;
+        mMaxLines = maxLines;
+        if (!needsSegmentUpdate) mSegments.setParagraphLimit(maxLines);
         needsLineUpdate = true;
+        mKeptLineCount = 0;
+    }
+
+    public int getMaxLines() {
+        return mMaxLines;
+    }
+
+    /**
+     * @param where only TextUtils.TruncateAt.END is supported, or null for no ellipsis
+     */
+    public void setEllipsize(TextUtils.TruncateAt where) {
+        if (where != null && where != TextUtils.TruncateAt.END)
+            throw new IllegalArgumentException("Layout: only TruncateAt.END is supported");
+        if (where == mEllipsize)
+            return;
+        mEllipsize = where;
+        needsLineUpdate = true;
+        mKeptLineCount = 0;
+    }
+
+    public TextUtils.TruncateAt getEllipsize() {
+        return mEllipsize;
     }
 
     public int getHeight() {
@@ -340,14 +1011,14 @@ public class MongolLayout {
         } else {
             mHeight = height;
             needsLineUpdate = true;
+            mKeptLineCount = 0;
         }
     }
 
     public int getWidth() {
         if (needsLineUpdate) updateLines();
-        if (mLinesInfo == null || mLinesInfo.size() == 0) return 0;
-        int lastLine = mLinesInfo.size() - 1;
-        return mLinesInfo.get(lastLine).top;
+        if (mLineCount == 0) return 0;
+        return mLineTops[mLineCount - 1];
     }
 
 
@@ -372,50 +1043,64 @@ public class MongolLayout {
 
     int getLineBottom(int line) {
         if (line <= 0) return 0;
-        return mLinesInfo.get(line - 1).top;
+        return mLineTops[line - 1];
     }
 
     int getLineDescent(int line) {
         // TODO this should probably be based on the actual line
         // see http://stackoverflow.com/a/43691403
-        return mTextPaint.getFontMetricsInt().descent;
+        mTextPaint.getFontMetricsInt(mFontMetricsInt);
+        return mFontMetricsInt.descent;
     }
 
     int getLineTop(int line) {
-        if (mLinesInfo == null || mLinesInfo.size() == 0) {
-            return mTextPaint.getFontMetricsInt().bottom - mTextPaint.getFontMetricsInt().top;
+        if (mLineCount == 0) {
+            mTextPaint.getFontMetricsInt(mFontMetricsInt);
+            return mFontMetricsInt.bottom - mFontMetricsInt.top;
         }
-        return mLinesInfo.get(line).top;
+        return mLineTops[line];
     }
 
     int getLineCount() {
-        return mLinesInfo != null ? mLinesInfo.size() : 0;
-        //return mLinesInfo.size();
+        return mLineCount;
     }
 
     int getLineStart(int line) {
-        if (mLinesInfo == null || mLinesInfo.size() == 0) return 0;
-        return mLinesInfo.get(line).startOffset;
+        if (mLineCount == 0) return mStart;
+        return mLineStarts[line];
     }
 
     int getLineEnd(int line) {
-        if (mLinesInfo == null || mLinesInfo.size() == 0) return 0;
-        if (line == mLinesInfo.size() - 1) {
-            return mText.length();
+        if (mLineCount == 0) return 0;
+        if (line == mLineCount - 1) {
+            return mTextEnd;
         } else {
-            return mLinesInfo.get(line + 1).startOffset;
+            return mLineStarts[line + 1];
         }
     }
 
+    // number of chars from the start of the line where the ellipsis begins
+    int getEllipsisStart(int line) {
+        if (mEllipsisStart == NO_ELLIPSIS || line != getLineCount() - 1) return 0;
+        return mEllipsisStart - getLineStart(line);
+    }
+
+    // number of chars replaced by the ellipsis
+    int getEllipsisCount(int line) {
+        if (mEllipsisStart == NO_ELLIPSIS || line != getLineCount() - 1) return 0;
+        return getLineEnd(line) - mEllipsisStart;
+    }
+
     public int getLineForOffset(int offset) {
-        int high = getLineCount();
+        final int[] starts = mLineStarts;
+        int high = mLineCount;
         int low = -1;
         int guess;
 
         while (high - low > 1) {
             guess = (high + low) / 2;
 
-            if (getLineStart(guess) > offset)
+            if (starts[guess] > offset)
                 high = guess;
             else
                 low = guess;
@@ -432,14 +1117,15 @@ public class MongolLayout {
     // to the right of the last line of the text, you get the last line.
     int getLineForHorizontal(int horizontal) {
         if (horizontal <= 0) return 0;
-        if (mLinesInfo == null || mLinesInfo.size() == 0) return 0;
-        final int lineCount = mLinesInfo.size();
+        if (mLineCount == 0) return 0;
+        final int lineCount = mLineCount;
+        final int[] tops = mLineTops;
         int high = lineCount;
         int low = -1;
         int guess;
         while (high - low > 1) {
             guess = (high + low) >> 1;
-            if (mLinesInfo.get(guess).top < horizontal) {
+            if (tops[guess] < horizontal) {
                 low = guess;
             } else {
                 high = guess;
@@ -458,7 +1144,7 @@ public class MongolLayout {
         final int lineEndOffset = getLineEnd(line);
 
         MongolTextLine tl = MongolTextLine.obtain();
-        tl.set(mTextPaint, mText, lineStartOffset, lineEndOffset);
+        tl.set(mTextPaint, mText, lineStartOffset, lineEndOffset, getItemizer());
         int offset = tl.getOffsetForAdvance(vertical);
         MongolTextLine.recycle(tl);
 
@@ -481,8 +1167,8 @@ public class MongolLayout {
         //int end = getLineEnd(line);
 
         MongolTextLine tl = MongolTextLine.obtain();
-        tl.set(mTextPaint, mText, start, offset);
-        float verticalLineHeight = tl.measure().width();
+        tl.set(mTextPaint, mText, start, offset, getItemizer());
+        float verticalLineHeight = tl.measure(mMeasuredSize).width();
         MongolTextLine.recycle(tl);
 
         return verticalLineHeight;
@@ -497,23 +1183,213 @@ public class MongolLayout {
 //
 //    }
 
+    // The line break segments of a range of the text with their measured sizes
+    private static class Segments {
+        private final MongolLineBreaker breaker = new MongolLineBreaker();
+        private final RectF measuredSize = new RectF();
+        private CharSequence text;
+        private TextPaint paint;
+        private MongolScriptItemizer itemizer;
+        private int start;
+
+        int count;
+        int[] ends = new int[INITIAL_SEGMENT_CAPACITY];
+        float[] widths = new float[INITIAL_SEGMENT_CAPACITY];
+        float[] heights = new float[INITIAL_SEGMENT_CAPACITY];
+        boolean isComplete;
+
+        // horizontal line orientation
+        float longestParagraph;
+        float paragraphHeightSum;
+        float paragraphWidth;   // of the paragraph that hasn't ended yet
+        float paragraphHeight;  // of the paragraph that hasn't ended yet
+        int paragraphStart;     // of the paragraph that hasn't ended yet
+        int longestParagraphStart;
+        int longestParagraphEnd;
+
+        // for maxLines: the number of paragraphs that have ended and the
+        // longest of the first paragraphLimit of them
+        int paragraphLimit = Integer.MAX_VALUE;
+        int paragraphCount;
+        float longestLimitedParagraph;
+
+        void reset(CharSequence text, TextPaint paint, MongolScriptItemizer itemizer,
+                   int start, int end) {
+            this.text = text;
+            this.paint = paint;
+            this.itemizer = itemizer;
+            this.start = start;
+            count = 0;
+            isComplete = false;
+            longestParagraph = 0;
+            paragraphHeightSum = 0;
+            paragraphWidth = 0;
+            paragraphHeight = 0;
+            paragraphStart = start;
+            longestParagraphStart = start;
+            longestParagraphEnd = start;
+            paragraphCount = 0;
+            longestLimitedParagraph = 0;
+            breaker.setText(text, start, end);
+            breaker.first();
+        }
 
-    private class LineInfo {
-        int startOffset;
+        // returns false when there are no more segments
+        boolean measureNext(MongolTextLine tl) {
+            final int segmentStart = getStart(count);
+            final int end = breaker.next();
+            if (end == MongolLineBreaker.DONE) return false;
+
+            boolean isParagraphEnd = (text.charAt(end - 1) == '\n');
+            tl.set(paint, text, segmentStart, isParagraphEnd ? end - 1 : end, itemizer);
+            RectF size = tl.measure(measuredSize);
+            add(end, size.width(), size.height());
+
+            paragraphWidth += size.width();
+            paragraphHeight = Math.max(paragraphHeight, size.height());
+            if (isParagraphEnd) endParagraph(end);
+            return true;
+        }
 
-        // top refers to the top of a non-rotated line. Since the line gets rotated
-        // it is the x distance from the left side of the layout to the right side
-        // of the rotated line. The top of each succeeding line increases as a sum
-        // of the previous (rotated) line widths.
-        int top;
+        private void endParagraph(int end) {
+            if (paragraphWidth > longestParagraph) {
+                longestParagraph = paragraphWidth;
+                longestParagraphStart = paragraphStart;
+                longestParagraphEnd = end;
+            }
+            if (paragraphCount < paragraphLimit) {
+                longestLimitedParagraph = Math.max(longestLimitedParagraph, paragraphWidth);
+            }
+            paragraphCount++;
+            paragraphHeightSum += paragraphHeight;
+            paragraphWidth = 0;
+            paragraphHeight = 0;
+            paragraphStart = end;
+        }
+
+        // Drops the segments that an edit starting at changeStart may have changed
+        // (including the one that ends there since the break after it may be gone)
+        // so that measuring continues from the last segment that is kept.
+        void truncate(int changeStart, int end) {
+            int keep = count;
+            while (keep > 0 && ends[keep - 1] >= changeStart) {
+                keep--;
+            }
+            count = keep;
+            isComplete = false;
+            recountParagraphs();
+
+            breaker.setText(text, getStart(keep), end);
+            breaker.first();
+        }
+
+        void setParagraphLimit(int limit) {
+            if (limit == paragraphLimit) return;
+            paragraphLimit = limit;
+            recountParagraphs();
+        }
+
+        // the paragraph sizes from the measured segments
+        private void recountParagraphs() {
+            longestParagraph = 0;
+            paragraphHeightSum = 0;
+            paragraphWidth = 0;
+            paragraphHeight = 0;
+            paragraphStart = start;
+            longestParagraphStart = start;
+            longestParagraphEnd = start;
+            paragraphCount = 0;
+            longestLimitedParagraph = 0;
+            for (int i = 0; i < count; i++) {
+                paragraphWidth += widths[i];
+                paragraphHeight = Math.max(paragraphHeight, heights[i]);
+                if (text.charAt(ends[i] - 1) == '\n') endParagraph(ends[i]);
+            }
+        }
+
+        // returns -1 if no segment starts at offset
+        int indexOfStart(int offset) {
+            if (offset == start) return 0;
+            int low = -1;
+            int high = count;
+            while (high - low > 1) {
+                final int guess = (high + low) >>> 1;
+                if (ends[guess] < offset) {
+                    low = guess;
+                } else {
+                    high = guess;
+                }
+            }
+            if (high < count && ends[high] == offset) return high + 1;
+            return -1;
+        }
 
-        float measuredWidth;
+        // The other segments must start where these ones end. Only used
+        // without a paragraph limit.
+        void append(Segments other) {
+            for (int i = 0; i < other.count; i++) {
+                add(other.ends[i], other.widths[i], other.heights[i]);
+            }
+            if (other.longestParagraph > longestParagraph) {
+                longestParagraph = other.longestParagraph;
+                longestParagraphStart = other.longestParagraphStart;
+                longestParagraphEnd = other.longestParagraphEnd;
+            }
+            longestLimitedParagraph = longestParagraph;
+            paragraphCount += other.paragraphCount;
+            paragraphHeightSum += other.paragraphHeightSum;
+            // only the last range can end in the middle of a paragraph
+            paragraphWidth = other.paragraphWidth;
+            paragraphHeight = other.paragraphHeight;
+            paragraphStart = other.paragraphStart;
+        }
 
-        LineInfo(int start, int top, float measuredWidth) {
-            this.startOffset = start;
-            this.top = top;
-            this.measuredWidth = measuredWidth;
+        private void add(int end, float width, float height) {
+            if (count == ends.length) {
+                final int newCapacity = count * 2;
+                ends = Arrays.copyOf(ends, newCapacity);
+                widths = Arrays.copyOf(widths, newCapacity);
+                heights = Arrays.copyOf(heights, newCapacity);
+            }
+            ends[count] = end;
+            widths[count] = width;
+            heights[count] = height;
+            count++;
         }
 
+        int getStart(int segment) {
+            return (segment == 0) ? start : ends[segment - 1];
+        }
+    }
+
+    // Measures one chunk of whole paragraphs on a worker thread. The chunk gets
+    // its own copy of the paint because Paint isn't safe to share across threads.
+    private static class ParagraphChunk implements Callable<Segments> {
+        private final CharSequence mText;
+        private final TextPaint mPaint;
+        private final MongolScriptItemizer mItemizer;
+        private final int mStart;
+        private final int mEnd;
+
+        ParagraphChunk(CharSequence text, TextPaint paint, MongolScriptItemizer itemizer,
+                       int start, int end) {
+            mText = text;
+            mPaint = new TextPaint(paint);
+            mItemizer = itemizer;
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        public Segments call() {
+            Segments segments = new Segments();
+            segments.reset(mText, mPaint, mItemizer, mStart, mEnd);
+            MongolTextLine tl = MongolTextLine.obtain();
+            while (segments.measureNext(tl)) {
+                // keep measuring
+            }
+            MongolTextLine.recycle(tl);
+            return segments;
+        }
     }
 }
@@ -0,0 +1,286 @@
+package net.studymongolian.mongollibrary;
+
+// This class finds the line break opportunities in Menksoft glyph text.
+// It replaces java.text.BreakIterator for MongolLayout. BreakIterator
+// needs a String (so the whole spanned glyph text had to be copied on
+// every relayout) and uses the generic Unicode line breaking rules,
+// which don't know anything about the Menksoft PUA punctuation.
+//
+// The rules here are a small subset of UAX #14:
+//     - break after a new line character (mandatory)
+//     - spaces hang at the end of a line, so break after (not before) them
+//     - NNBS glues a suffix to the preceding word (no break on either side)
+//     - no break before closing punctuation or after opening punctuation
+//     - break before and after rotated CJK/emoji characters
+//     - break after Mongolian punctuation and dashes
+//
+// Boundaries are returned the same way as BreakIterator.next(). Each segment
+// includes any trailing spaces and the new line character if there is one.
+// No objects are created while iterating.
+
+class MongolLineBreaker {
+
+    static final int DONE = -1;
+
+    // character classes
+    private static final int ALPHABETIC = 0;
+    private static final int NEW_LINE = 1;
+    private static final int SPACE = 2;
+    private static final int GLUE = 3;              // no break before or after
+    private static final int COMBINING = 4;         // no break before, takes the class of the previous char
+    private static final int OPEN = 5;              // no break after
+    private static final int CLOSE = 6;             // no break before
+    private static final int MONGOLIAN_CLOSE = 7;   // no break before, break after
+    private static final int HYPHEN = 8;            // break after
+    private static final int ROTATED = 9;           // break before and after
+
+    private CharSequence mText;
+    private int mStart;
+    private int mEnd;
+    private int mPosition;
+
+    MongolLineBreaker() {
+        mText = "";
+    }
+
+    void setText(CharSequence text) {
+        setText(text, 0, text.length());
+    }
+
+    /**
+     * The text is not copied so it should not be changed while breaking lines.
+     *
+     * @param text  Menksoft glyph text (can be spanned)
+     * @param start the first index to look for breaks from
+     * @param end   the index after the last char
+     */
+    void setText(CharSequence text, int start, int end) {
+        mText = text;
+        mStart = start;
+        mEnd = end;
+        mPosition = start;
+    }
+
+    /**
+     * @return the start of the text
+     */
+    int first() {
+        mPosition = mStart;
+        return mPosition;
+    }
+
+    /**
+     * @return the next break opportunity after the current position or DONE if
+     *         the end of the text has already been returned
+     */
+    int next() {
+        if (mPosition >= mEnd) return DONE;
+
+        int offset = mPosition;
+        int codepoint = Character.codePointAt(mText, offset);
+        int previousClass = getCharClass(codepoint);
+        if (previousClass == COMBINING) previousClass = ALPHABETIC;
+        offset += Character.charCount(codepoint);
+
+        while (offset < mEnd && previousClass != NEW_LINE) {
+            codepoint = Character.codePointAt(mText, offset);
+            final int charClass = getCharClass(codepoint);
+            if (isBreakOpportunity(previousClass, charClass)) break;
+            offset += Character.charCount(codepoint);
+            if (charClass != COMBINING) {
+                previousClass = charClass;
+            } else if (previousClass == SPACE) {
+                // a combining mark after a space is treated like a letter
+                previousClass = ALPHABETIC;
+            }
+        }
+
+        mPosition = offset;
+        return offset;
+    }
+
+    private static boolean isBreakOpportunity(int before, int after) {
+        switch (after) {
+            case NEW_LINE:
+            case SPACE:
+            case GLUE:
+            case COMBINING:
+            case CLOSE:
+            case MONGOLIAN_CLOSE:
+                return false;
+        }
+        switch (before) {
+            case GLUE:
+            case OPEN:
+                return false;
+            case SPACE:
+            case HYPHEN:
+            case MONGOLIAN_CLOSE:
+            case ROTATED:
+                return true;
+        }
+        return after == ROTATED;
+    }
+
+    private static int getCharClass(int codepoint) {
+
+        // Menksoft glyphs (letters are the most common so check them first)
+        if (codepoint >= MongolCode.Glyph.MENKSOFT_START && codepoint <= MongolCode.Glyph.MENKSOFT_END) {
+            if (codepoint >= MongolCode.Glyph.A_START) return ALPHABETIC;
+            return getMenksoftPunctuationClass((char) codepoint);
+        }
+
+        switch (codepoint) {
+            case '\n':
+                return NEW_LINE;
+            case ' ':
+            case '\t':
+            case '\r':
+            case '\u3000': // ideographic space
+            case '\u200B': // zero width space
+                return SPACE;
+            case MongolCode.Uni.NNBS:
+            case MongolCode.Uni.ZWJ:
+            case '\u00A0': // no-break space
+            case '\u2007': // figure space
+            case '\u2060': // word joiner
+            case '\uFEFF': // zero width no-break space
+                return GLUE;
+            case MongolCode.Uni.ZWNJ:
+            case MongolCode.Uni.FVS1:
+            case MongolCode.Uni.FVS2:
+            case MongolCode.Uni.FVS3:
+            case MongolCode.Uni.MVS:
+            case '\u20E3': // combining enclosing keycap
+                return COMBINING;
+            case '(':
+            case '[':
+            case '{':
+            case MongolCode.Uni.MONGOLIAN_BIRGA:
+            case MongolCode.Uni.VERTICAL_LEFT_WHITE_LENTICULAR_BRACKET:
+            case '\u3008':
+            case '\u300A':
+            case '\u300C':
+            case '\u300E':
+            case '\u3010':
+            case '\u3014':
+            case '\u3016':
+            case '\u3018':
+            case '\u301A':
+            case '\uFF08':
+                return OPEN;
+            case ')':
+            case ']':
+            case '}':
+            case '.':
+            case ',':
+            case ':':
+            case ';':
+            case '!':
+            case '?':
+            case '%':
+                return CLOSE;
+            case MongolCode.Uni.MONGOLIAN_ELLIPSIS:
+            case MongolCode.Uni.MONGOLIAN_COMMA:
+            case MongolCode.Uni.MONGOLIAN_FULL_STOP:
+            case MongolCode.Uni.MONGOLIAN_COLON:
+            case MongolCode.Uni.MONGOLIAN_FOUR_DOTS:
+            case MongolCode.Uni.MONGOLIAN_MANCHU_COMMA:
+            case MongolCode.Uni.MONGOLIAN_MANCHU_FULL_STOP:
+            case MongolCode.Uni.VERTICAL_RIGHT_WHITE_LENTICULAR_BRAKCET:
+            case MongolCode.Uni.VERTICAL_HORIZONTAL_ELLIPSIS:
+            case MongolCode.Uni.DOUBLE_EXCLAMATION_MARK:
+            case MongolCode.Uni.DOUBLE_QUESTION_MARK:
+            case MongolCode.Uni.QUESTION_EXCLAMATION_MARK:
+            case MongolCode.Uni.EXCLAMATION_QUESTION_MARK:
+            case '\u3001':
+            case '\u3002':
+            case '\u3009':
+            case '\u300B':
+            case '\u300D':
+            case '\u300F':
+            case '\u3011':
+            case '\u3015':
+            case '\u3017':
+            case '\u3019':
+            case '\u301B':
+            case '\uFF01':
+            case '\uFF09':
+            case '\uFF0C':
+            case '\uFF0E':
+            case '\uFF1A':
+            case '\uFF1B':
+            case '\uFF1F':
+                return MONGOLIAN_CLOSE;
+            case '-':
+            case '\u2010': // hyphen
+            case '\u2013': // en dash
+            case '\u2014': // em dash
+                return HYPHEN;
+        }
+
+        // vertical presentation forms
+        if (codepoint >= MongolCode.Uni.VERTICAL_COMMA
+                && codepoint <= MongolCode.Uni.VERTICAL_QUESTION_MARK) return MONGOLIAN_CLOSE;
+        if (codepoint >= MongolCode.Uni.VERTICAL_LEFT_PARENTHESIS
+                && codepoint <= MongolCode.Uni.VERTICAL_RIGHT_SQUARE_BRACKET) {
+            if (codepoint == 0xFE45 || codepoint == 0xFE46) return ALPHABETIC; // sesame dots
+            // left brackets are odd numbers, right brackets are even
+            return (codepoint % 2 == 1) ? OPEN : MONGOLIAN_CLOSE;
+        }
+
+        // combining diacritical marks, variation selectors, emoji skin tone modifiers
+        if (codepoint >= 0x0300 && codepoint <= 0x036F) return COMBINING;
+        if (codepoint >= 0xFE00 && codepoint <= 0xFE0F) return COMBINING;
+        if (codepoint >= 0x1F3FB && codepoint <= 0x1F3FF) return COMBINING;
+        if (codepoint >= 0xE0020 && codepoint <= 0xE007F) return COMBINING; // emoji tags
+
+        // other spaces
+        if (codepoint >= 0x2000 && codepoint <= 0x200A) return SPACE;
+
+        if (MongolCode.isRotated(codepoint)) return ROTATED;
+
+        return ALPHABETIC;
+    }
+
+    private static int getMenksoftPunctuationClass(char glyph) {
+        switch (glyph) {
+            case MongolCode.Glyph.BIRGA:
+            case MongolCode.Glyph.BIRGA_WITH_ORNAMENT:
+            case MongolCode.Glyph.ROTATED_BIRGA:
+            case MongolCode.Glyph.DOUBLE_BIRGA_WITH_ORNAMENT:
+            case MongolCode.Glyph.TRIPLE_BIRGA_WITH_ORNAMENT:
+            case MongolCode.Glyph.LEFT_PARENTHESIS:
+            case MongolCode.Glyph.LEFT_ANGLE_BRACKET:
+            case MongolCode.Glyph.LEFT_BRACKET:
+            case MongolCode.Glyph.LEFT_DOUBLE_ANGLE_BRACKET:
+            case MongolCode.Glyph.LEFT_WHITE_CORNER_BRACKET:
+                return OPEN;
+            case MongolCode.Glyph.ELLIPSIS:
+            case MongolCode.Glyph.COMMA:
+            case MongolCode.Glyph.FULL_STOP:
+            case MongolCode.Glyph.COLON:
+            case MongolCode.Glyph.FOUR_DOTS:
+            case MongolCode.Glyph.MANCH_COMMA:
+            case MongolCode.Glyph.MANCHU_FULL_STOP:
+            case MongolCode.Glyph.QUESTION_EXCLAMATION:
+            case MongolCode.Glyph.EXCLAMATION_QUESTION:
+            case MongolCode.Glyph.EXCLAMATION:
+            case MongolCode.Glyph.QUESTION:
+            case MongolCode.Glyph.SEMICOLON:
+            case MongolCode.Glyph.RIGHT_PARENTHESIS:
+            case MongolCode.Glyph.RIGHT_ANGLE_BRACKET:
+            case MongolCode.Glyph.RIGHT_BRACKET:
+            case MongolCode.Glyph.RIGHT_DOUBLE_ANGLE_BRACKET:
+            case MongolCode.Glyph.RIGHT_WHITE_CORNER_BRACKET:
+            case MongolCode.Glyph.FULLWIDTH_COMMA:
+                return MONGOLIAN_CLOSE;
+            case MongolCode.Glyph.EN_DASH:
+            case MongolCode.Glyph.EM_DASH:
+                return HYPHEN;
+            default:
+                // nirugu, digits, middle dot, etc
+                return ALPHABETIC;
+        }
+    }
+}
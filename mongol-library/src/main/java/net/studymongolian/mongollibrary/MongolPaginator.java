@@ -0,0 +1,235 @@
+package net.studymongolian.mongollibrary;
+
+import android.graphics.Paint;
+import android.text.TextPaint;
+import android.view.Gravity;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+// This class splits a long text into pages for an e-reader. Each page is a
+// grid of vertical lines (columns) that fits in pageWidth x pageHeight.
+//
+// The pages are found lazily, one after another, with the same line breaking
+// as MongolLayout. Finding a page only measures the text on that page (and a
+// little after it), so opening a book doesn't have to measure the whole book.
+// The page boundaries are kept, so after a page has been found it can be
+// accessed again directly.
+//
+// Use computePagesInBackground() to find the next pages while the current
+// page is being shown. All of the public methods are synchronized, so calling
+// one from the UI thread only waits if the page it needs is being found at
+// that moment.
+//
+// Show a page in a MongolTextView that uses the same paint settings and has a
+// content size of pageWidth x pageHeight.
+
+public class MongolPaginator {
+
+    private static final int INITIAL_PAGE_CAPACITY = 16;
+
+    private final MongolTextStorage mTextStorage;
+    private final CharSequence mGlyphText;
+    private final int mPageWidth;
+    private final MongolLayout mLayout;
+
+    // glyph indexes, page i ends at mPageEnds[i]
+    private int[] mPageEnds = new int[INITIAL_PAGE_CAPACITY];
+    private int mPageCount;
+    private boolean mIsComplete;
+    private int mLinesPerPageGuess;
+
+    /**
+     * @param text       the Unicode text to split into pages
+     * @param paint      the paint that the pages will be drawn with (it is copied)
+     * @param pageWidth  the width of a page in pixels (without padding)
+     * @param pageHeight the height of a page (the length of a vertical line) in pixels
+     */
+    public MongolPaginator(CharSequence text, TextPaint paint, int pageWidth, int pageHeight) {
+        if (pageWidth <= 0 || pageHeight <= 0)
+            throw new IllegalArgumentException("Paginator: page size " + pageWidth + "x" + pageHeight);
+
+        mTextStorage = new MongolTextStorage(text);
+        mGlyphText = mTextStorage.getGlyphText();
+        mPageWidth = pageWidth;
+
+        // the paint may be used on a background thread
+        TextPaint pagePaint = new TextPaint(paint);
+        mLayout = new MongolLayout(mGlyphText, 0, mGlyphText.length(), pagePaint,
+                pageHeight, Gravity.TOP, 1, 0, false, Integer.MAX_VALUE);
+
+        Paint.FontMetricsInt fontMetrics = pagePaint.getFontMetricsInt();
+        int lineHeight = Math.max(1, fontMetrics.bottom - fontMetrics.top);
+        mLinesPerPageGuess = pageWidth / lineHeight + 1;
+    }
+
+    /**
+     * Finds the pages up to lastPage on the executor.
+     *
+     * @param executor a background executor
+     * @param lastPage the index of the last page to find, Integer.MAX_VALUE for all of them
+     */
+    public void computePagesInBackground(Executor executor, final int lastPage) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // The lock is released after each page so that the UI
+                // thread doesn't have to wait for more than one page.
+                while (true) {
+                    synchronized (MongolPaginator.this) {
+                        if (mPageCount > lastPage || !computeNextPage()) return;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @param page the page index
+     * @return true if the text has this many pages (the pages up to it are found)
+     */
+    public synchronized boolean hasPage(int page) {
+        return computePagesUntil(page);
+    }
+
+    /**
+     * Finds all of the remaining pages.
+     *
+     * @return the total number of pages
+     */
+    public synchronized int getPageCount() {
+        computePagesUntil(Integer.MAX_VALUE);
+        return mPageCount;
+    }
+
+    /**
+     * @return the number of pages that have been found so far
+     */
+    public synchronized int getComputedPageCount() {
+        return mPageCount;
+    }
+
+    /**
+     * @return true if all of the pages have been found
+     */
+    public synchronized boolean isComplete() {
+        return mIsComplete;
+    }
+
+    /**
+     * @param page the page index
+     * @return the Unicode index of the first char on the page
+     */
+    public synchronized int getPageStart(int page) {
+        checkPage(page);
+        return mTextStorage.getUnicodeIndexForGlyphIndex(getGlyphPageStart(page));
+    }
+
+    /**
+     * @param page the page index
+     * @return the Unicode index after the last char on the page
+     */
+    public synchronized int getPageEnd(int page) {
+        checkPage(page);
+        return mTextStorage.getUnicodeIndexForGlyphIndex(mPageEnds[page]);
+    }
+
+    /**
+     * @param page the page index
+     * @return the Unicode text (with spans) to display on the page
+     */
+    public synchronized CharSequence getPageText(int page) {
+        checkPage(page);
+        int start = mTextStorage.getUnicodeIndexForGlyphIndex(getGlyphPageStart(page));
+        int end = mTextStorage.getUnicodeIndexForGlyphIndex(mPageEnds[page]);
+        return mTextStorage.getUnicodeText().subSequence(start, end);
+    }
+
+    /**
+     * Useful for opening a book at the last reading position.
+     *
+     * @param offset a Unicode index in the text
+     * @return the index of the page that the offset is on
+     */
+    public synchronized int getPageForOffset(int offset) {
+        int glyphOffset = mTextStorage.getGlyphIndexForUnicodeIndex(
+                Math.max(0, Math.min(offset, mTextStorage.length())));
+        while (!mIsComplete && (mPageCount == 0 || mPageEnds[mPageCount - 1] <= glyphOffset)) {
+            computeNextPage();
+        }
+        // the first page that ends after the offset
+        int low = -1;
+        int high = mPageCount - 1;
+        while (high - low > 1) {
+            int guess = (high + low) >>> 1;
+            if (mPageEnds[guess] <= glyphOffset) {
+                low = guess;
+            } else {
+                high = guess;
+            }
+        }
+        return high;
+    }
+
+    private void checkPage(int page) {
+        if (page < 0 || !computePagesUntil(page))
+            throw new IndexOutOfBoundsException("Paginator: page " + page + " doesn't exist");
+    }
+
+    // returns false if the text has fewer pages
+    private boolean computePagesUntil(int page) {
+        while (mPageCount <= page) {
+            if (!computeNextPage()) return false;
+        }
+        return true;
+    }
+
+    private int getGlyphPageStart(int page) {
+        return (page == 0) ? 0 : mPageEnds[page - 1];
+    }
+
+    // returns false if all of the pages have already been found
+    private boolean computeNextPage() {
+        if (mIsComplete) return false;
+
+        final int length = mGlyphText.length();
+        final int pageStart = getGlyphPageStart(mPageCount);
+        if (pageStart >= length && mPageCount > 0) {
+            mIsComplete = true;
+            return false;
+        }
+
+        // Only the lines up to maxLines are broken and measured. If they all
+        // fit on the page then there is room for more so try again with more.
+        mLayout.setText(mGlyphText, pageStart, length);
+        int maxLines = mLinesPerPageGuess;
+        int lineCount;
+        int fittingLines;
+        while (true) {
+            mLayout.setMaxLines(maxLines);
+            mLayout.getWidth(); // breaks the lines
+            lineCount = mLayout.getLineCount();
+            fittingLines = 0;
+            while (fittingLines < lineCount && mLayout.getLineTop(fittingLines) <= mPageWidth) {
+                fittingLines++;
+            }
+            if (fittingLines < lineCount || mLayout.getLineEnd(lineCount - 1) >= length) break;
+            maxLines *= 2;
+        }
+
+        // a line that is wider than the page still gets a page of its own
+        fittingLines = Math.max(1, fittingLines);
+        int pageEnd = (fittingLines < lineCount)
+                ? mLayout.getLineStart(fittingLines)
+                : mLayout.getLineEnd(lineCount - 1);
+        mLinesPerPageGuess = Math.max(mLinesPerPageGuess, fittingLines + 1);
+
+        if (mPageCount == mPageEnds.length) {
+            mPageEnds = Arrays.copyOf(mPageEnds, mPageCount * 2);
+        }
+        mPageEnds[mPageCount] = pageEnd;
+        mPageCount++;
+        if (pageEnd >= length) mIsComplete = true;
+        return true;
+    }
+}
@@ -0,0 +1,223 @@
+package net.studymongolian.mongollibrary;
+
+import java.util.Arrays;
+
+// This class finds the chars that are rotated in vertical text (CJK, emoji,
+// etc) so that MongolTextLine can split a line into runs without looking at
+// every char again each time a line is set for measuring, drawing or hit
+// testing.
+//
+// Code points are classified with a two level lookup table that is built once.
+// The high bits of a code point select a block of 256 code points and the low
+// byte selects the class within that block. Blocks where every code point has
+// the same class all share one block in the table, so the whole table is only
+// a few KB.
+//
+// An itemizer instance belongs to a layout. It itemizes its text lazily, only
+// as far as the text has been asked about, and keeps the offsets of the
+// rotated code points until the text changes.
+
+class MongolScriptItemizer {
+
+    // code point classes
+    static final int OTHER = 0;         // Latin, Cyrillic, digits, punctuation, etc
+    static final int MONGOLIAN = 1;     // Unicode Mongolian and Menksoft glyphs
+    static final int SPACE = 2;
+    static final int CJK = 3;           // rotated
+    static final int EMOJI = 4;         // rotated
+    private static final int CLASS_COUNT = 5;
+
+    private static final int BLOCK_SHIFT = 8;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+    private static final int BLOCK_COUNT = (Character.MAX_CODE_POINT + 1) >> BLOCK_SHIFT;
+
+    private static final char[] sBlockIndexes = new char[BLOCK_COUNT];
+    private static final byte[] sBlocks;
+
+    // The classes of all code points as (first code point, class) pairs. Each
+    // class applies until the first code point of the next pair.
+    private static final int[] RANGES = {
+            0x0000, OTHER,
+            0x0009, SPACE,      // tab, new line
+            0x000B, OTHER,
+            0x000D, SPACE,      // carriage return
+            0x000E, OTHER,
+            0x0020, SPACE,
+            0x0021, OTHER,      // Latin, etc
+            0x1100, CJK,        // Korean Jamo
+            0x1200, OTHER,
+            0x1680, SPACE,      // Ogham space mark
+            0x1681, OTHER,
+            0x1800, MONGOLIAN,  // Mongolian
+            0x18B0, OTHER,
+            0x2000, SPACE,      // en quad ... hair space
+            0x200B, OTHER,
+            0x2028, SPACE,      // line and paragraph separators
+            0x202A, OTHER,
+            0x202F, MONGOLIAN,  // NNBS
+            0x2030, OTHER,
+            0x205F, SPACE,      // medium mathematical space
+            0x2060, OTHER,
+            0x2E80, CJK,        // CJK radicals supplement, etc
+            0x3000, SPACE,      // ideographic space
+            0x3001, OTHER,      // CJK punctuation that the Menksoft font already rotates
+            0x301D, CJK,
+            0x3251, OTHER,      // circled numbers 21-35 (handled by the font)
+            0x3260, CJK,
+            0x32B1, OTHER,      // circled numbers 36-50 (handled by the font)
+            0x32C0, CJK,        // ... CJK unified ideographs
+            0xA000, OTHER,
+            0xAC00, CJK,        // Korean Hangul syllables ... Jamo extended B
+            0xD800, OTHER,
+            0xE234, MONGOLIAN,  // Menksoft glyphs (PUA)
+            0xE350, OTHER,
+            0xF900, CJK,        // CJK compatibility ideographs
+            0xFB00, OTHER,
+            // TODO the Halfwidth and Fullwidth Forms (0xFF00--0xFFEF) might be worth rotating
+            // The problem is the Menksoft font already rotated a few (but not all) of them.
+            0x1F001, EMOJI,
+            // FIXME this will rotate some things that maybe shouldn't be rotated
+            // TODO there are a few other random emoji in other places as well
+    };
+
+    static {
+        // everything after the last range start is in the last class
+        final int lastRange = RANGES.length - 2;
+        final int lastMixedBlock = RANGES[lastRange] >> BLOCK_SHIFT;
+        final byte[] classes = new byte[(lastMixedBlock + 1) << BLOCK_SHIFT];
+        for (int i = 0; i < lastRange; i += 2) {
+            Arrays.fill(classes, RANGES[i], RANGES[i + 2], (byte) RANGES[i + 1]);
+        }
+        Arrays.fill(classes, RANGES[lastRange], classes.length, (byte) RANGES[lastRange + 1]);
+        for (int block = lastMixedBlock + 1; block < BLOCK_COUNT; block++) {
+            sBlockIndexes[block] = (char) RANGES[lastRange + 1];
+        }
+
+        // the first blocks are the shared ones where every code point has the same class
+        byte[] blocks = new byte[CLASS_COUNT * BLOCK_SIZE * 2];
+        for (int charClass = 0; charClass < CLASS_COUNT; charClass++) {
+            Arrays.fill(blocks, charClass * BLOCK_SIZE, (charClass + 1) * BLOCK_SIZE, (byte) charClass);
+        }
+        int blockCount = CLASS_COUNT;
+
+        for (int block = 0; block <= lastMixedBlock; block++) {
+            final int base = block << BLOCK_SHIFT;
+            boolean isUniform = true;
+            for (int i = 1; i < BLOCK_SIZE; i++) {
+                if (classes[base + i] != classes[base]) {
+                    isUniform = false;
+                    break;
+                }
+            }
+            if (isUniform) {
+                sBlockIndexes[block] = (char) classes[base];
+                continue;
+            }
+            if ((blockCount + 1) * BLOCK_SIZE > blocks.length) {
+                blocks = Arrays.copyOf(blocks, blocks.length * 2);
+            }
+            System.arraycopy(classes, base, blocks, blockCount * BLOCK_SIZE, BLOCK_SIZE);
+            sBlockIndexes[block] = (char) blockCount;
+            blockCount++;
+        }
+        sBlocks = Arrays.copyOf(blocks, blockCount * BLOCK_SIZE);
+    }
+
+    static int getCharClass(int codepoint) {
+        return sBlocks[(sBlockIndexes[codepoint >> BLOCK_SHIFT] << BLOCK_SHIFT) | (codepoint & BLOCK_MASK)];
+    }
+
+    // emoji, CJK, etc are rotated when displayed in vertical text
+    static boolean isRotated(int codepoint) {
+        return getCharClass(codepoint) >= CJK;
+    }
+
+    /**
+     * Used when there is no itemizer for the text
+     *
+     * @return the index of the first rotated code point from start, or end if there isn't one
+     */
+    static int findNextRotated(CharSequence text, int start, int end) {
+        int offset = start;
+        while (offset < end) {
+            final int codepoint = Character.codePointAt(text, offset);
+            if (isRotated(codepoint)) return offset;
+            offset += Character.charCount(codepoint);
+        }
+        return end;
+    }
+
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MIN_ITEMIZE_LENGTH = 1024; // chars
+
+    private CharSequence mText = "";
+    private int mItemizedEnd;
+    private int mRotatedCount;
+    private int[] mRotatedOffsets = new int[INITIAL_CAPACITY];
+
+    /**
+     * The text is not copied. Call this again after it changes.
+     */
+    void setText(CharSequence text) {
+        mText = text;
+        mItemizedEnd = 0;
+        mRotatedCount = 0;
+    }
+
+    /**
+     * Call this after the text was edited in place.
+     *
+     * @param changeStart the index of the first changed char
+     */
+    void truncate(int changeStart) {
+        if (changeStart >= mItemizedEnd) return;
+        mItemizedEnd = changeStart;
+        while (mRotatedCount > 0 && mRotatedOffsets[mRotatedCount - 1] >= changeStart) {
+            mRotatedCount--;
+        }
+    }
+
+    /**
+     * Itemizes the text up to end now. Do this before using the itemizer from
+     * more than one thread, so that the other threads only read from it.
+     */
+    void itemizeUntil(int end) {
+        if (end <= mItemizedEnd) return;
+        end = Math.min(Math.max(end, mItemizedEnd + MIN_ITEMIZE_LENGTH), mText.length());
+        int offset = mItemizedEnd;
+        while (offset < end) {
+            final int codepoint = Character.codePointAt(mText, offset);
+            if (isRotated(codepoint)) {
+                if (mRotatedCount == mRotatedOffsets.length) {
+                    mRotatedOffsets = Arrays.copyOf(mRotatedOffsets, mRotatedCount * 2);
+                }
+                mRotatedOffsets[mRotatedCount++] = offset;
+            }
+            offset += Character.charCount(codepoint);
+        }
+        mItemizedEnd = offset;
+    }
+
+    /**
+     * @param start the index to start looking from
+     * @param end   the index to stop looking at
+     * @return the index of the first rotated code point from start, or end if there isn't one
+     */
+    int nextRotated(int start, int end) {
+        itemizeUntil(end);
+        int low = -1;
+        int high = mRotatedCount;
+        while (high - low > 1) {
+            final int guess = (high + low) >>> 1;
+            if (mRotatedOffsets[guess] < start) {
+                low = guess;
+            } else {
+                high = guess;
+            }
+        }
+        if (high == mRotatedCount) return end;
+        return Math.min(mRotatedOffsets[high], end);
+    }
+}
@@ -7,11 +7,9 @@ import android.graphics.RectF;
 import android.text.Spanned;
 import android.text.TextPaint;
 import android.text.style.CharacterStyle;
-import android.text.style.MetricAffectingSpan;
 import android.util.Log;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 class MongolTextLine {
     private static final String TAG = "MongolTextLine";
@@ -19,12 +17,6 @@ class MongolTextLine {
 
     private TextPaint mPaint;
     private CharSequence mText;
-    private List<TextRun> mTextRuns;
-
-    // XXX is having a static variable a bad idea here?
-    // The purpose of the work paint is to avoid modifying paint
-    // variables being passed in while measuring spanned text.
-    private static final TextPaint mWorkPaint = new TextPaint();
 
     // A text run is a substring of text within the text line. The substring is made up of
     //     (1) a single emoji or CJK character,
@@ -32,67 +24,112 @@ class MongolTextLine {
     //     (3) normal Mongolian/Latin/etc text.
     // A run may contain multiple types of spans covering the whole run but it should never
     // contain a span transition. It should also never contain multiple emoji or CJK characters.
-    private class TextRun {
-        int offset;             // the start position of the run in the text
-        int length;             // number of chars in the run
-        boolean isRotated;      // whether run is emoji or CJK (and thus should be rotated)
-        float measuredWidth;    // horizontal line orientation (but height of emoji/CJK)
-        float measuredHeight;   // horizontal line orientation (but width of emoji/CJK)
-
-        TextRun(int offset, int length, boolean isRotated, boolean isSpanned) {
-
-            this.offset = offset;
-            this.length = length;
-            this.isRotated = isRotated;
-
-            TextPaint wp;
-            if (isSpanned) {
-                wp = mWorkPaint;
+    //
+    // The runs are stored in parallel arrays rather than as objects. The arrays
+    // belong to this (pooled) text line and are reused every time it is set,
+    // only growing when a line has more runs than any line before it.
+    private int mRunCount;
+    private int[] mRunOffsets = new int[INITIAL_RUN_CAPACITY];          // the start position of the run in the text
+    private int[] mRunLengths = new int[INITIAL_RUN_CAPACITY];          // number of chars in the run
+    private int[] mRunFlags = new int[INITIAL_RUN_CAPACITY];            // see FLAG_ROTATED
+    private float[] mRunWidths = new float[INITIAL_RUN_CAPACITY];       // horizontal line orientation (but height of emoji/CJK)
+    private float[] mRunHeights = new float[INITIAL_RUN_CAPACITY];      // horizontal line orientation (but width of emoji/CJK)
+
+    // The paint for a styled run is resolved from its spans once when the line is
+    // set. Drawing and hit testing use it without looking up the spans again.
+    // The TextPaint objects are kept when the line is recycled so that they can
+    // be reused. (Runs without any spans just use mPaint.)
+    private TextPaint[] mRunPaints = new TextPaint[INITIAL_RUN_CAPACITY];
+
+    private final Paint.FontMetrics mFontMetrics = new Paint.FontMetrics();
+    private final float[] mMeasuredWidth = new float[1];
+
+    private static final int INITIAL_RUN_CAPACITY = 8;
+    private static final int FLAG_ROTATED = 1;  // whether run is emoji or CJK (and thus should be rotated)
+    private static final int FLAG_STYLED = 2;   // whether run uses its own resolved paint from mRunPaints
+
+    private void addRun(int offset, int length, boolean isRotated, boolean isSpanned) {
+
+        if (mRunCount == mRunOffsets.length) {
+            final int newCapacity = mRunCount * 2;
+            mRunOffsets = Arrays.copyOf(mRunOffsets, newCapacity);
+            mRunLengths = Arrays.copyOf(mRunLengths, newCapacity);
+            mRunFlags = Arrays.copyOf(mRunFlags, newCapacity);
+            mRunWidths = Arrays.copyOf(mRunWidths, newCapacity);
+            mRunHeights = Arrays.copyOf(mRunHeights, newCapacity);
+            mRunPaints = Arrays.copyOf(mRunPaints, newCapacity);
+        }
+
+        final int run = mRunCount;
+        int flags = isRotated ? FLAG_ROTATED : 0;
+        TextPaint wp = mPaint;
+        if (isSpanned) {
+            CharacterStyle[] spans = ((Spanned) mText).getSpans(offset, offset + length, CharacterStyle.class);
+            if (spans.length > 0) {
+                if (mRunPaints[run] == null) {
+                    mRunPaints[run] = new TextPaint();
+                }
+                wp = mRunPaints[run];
                 wp.set(mPaint);
-                MetricAffectingSpan[] spans = ((Spanned) mText).getSpans(offset, offset + length, MetricAffectingSpan.class);
-                for(MetricAffectingSpan span : spans) {
+                for (CharacterStyle span : spans) {
                     span.updateDrawState(wp);
                 }
-            } else {
-                wp = mPaint;
+                flags |= FLAG_STYLED;
             }
-
-            // just record the normal non-rotated values here
-            // measure and draw will take rotation into account
-            measuredWidth = wp.measureText(mText, offset, offset + length);
-            measuredHeight = wp.getFontMetrics().bottom - wp.getFontMetrics().top;
         }
+
+        // just record the normal non-rotated values here
+        // measure and draw will take rotation into account
+        mRunOffsets[run] = offset;
+        mRunLengths[run] = length;
+        mRunFlags[run] = flags;
+        mRunWidths[run] = wp.measureText(mText, offset, offset + length);
+        wp.getFontMetrics(mFontMetrics);
+        mRunHeights[run] = mFontMetrics.bottom - mFontMetrics.top;
+        mRunCount++;
     }
 
-    private static final MongolTextLine[] sCached = new MongolTextLine[3];
+    private boolean isRotated(int run) {
+        return (mRunFlags[run] & FLAG_ROTATED) != 0;
+    }
+
+    private TextPaint getRunPaint(int run) {
+        return ((mRunFlags[run] & FLAG_STYLED) != 0) ? mRunPaints[run] : mPaint;
+    }
+
+    // Each thread has its own pool of text lines so that layouts can be
+    // measured on background threads at the same time as the UI thread
+    // is drawing. A text line should only be used by the thread that
+    // obtained it.
+    private static final ThreadLocal<MongolTextLine[]> sCached = new ThreadLocal<MongolTextLine[]>() {
+        @Override
+        protected MongolTextLine[] initialValue() {
+            return new MongolTextLine[3];
+        }
+    };
 
     static MongolTextLine obtain() {
-        MongolTextLine tl;
-        synchronized (sCached) {
-            for (int i = sCached.length; --i >= 0;) {
-                if (sCached[i] != null) {
-                    tl = sCached[i];
-                    sCached[i] = null;
-                    return tl;
-                }
+        final MongolTextLine[] cached = sCached.get();
+        for (int i = cached.length; --i >= 0;) {
+            if (cached[i] != null) {
+                MongolTextLine tl = cached[i];
+                cached[i] = null;
+                return tl;
             }
         }
-        tl = new MongolTextLine();
-
-        return tl;
+        return new MongolTextLine();
     }
 
     static MongolTextLine recycle(MongolTextLine tl) {
         tl.mText = null;
         tl.mPaint = null;
         //tl.mHighlightPaint = null;
-        tl.mTextRuns = null;
-        synchronized(sCached) {
-            for (int i = 0; i < sCached.length; ++i) {
-                if (sCached[i] == null) {
-                    sCached[i] = tl;
-                    break;
-                }
+        tl.mRunCount = 0;
+        final MongolTextLine[] cached = sCached.get();
+        for (int i = 0; i < cached.length; ++i) {
+            if (cached[i] == null) {
+                cached[i] = tl;
+                break;
             }
         }
         return null;
@@ -101,116 +138,45 @@ class MongolTextLine {
 
 
     void set(TextPaint paint, CharSequence text, int start, int end) {
+        set(paint, text, start, end, null);
+    }
+
+    /**
+     * @param itemizer the itemizer for the text (if the caller has one) so that the
+     *                 chars don't have to be checked for rotation again, or null
+     */
+    void set(TextPaint paint, CharSequence text, int start, int end, MongolScriptItemizer itemizer) {
 
-        int nextSpanTransition = 0;
         boolean isSpanned = text instanceof Spanned;
         mPaint = paint;
         mText = text;
-        mTextRuns = new ArrayList<>(); // TODO recycle and reuse this for multiple lines?
-        int charCount;
-        int currentRunStart = start;
-        int currentRunLength = 0;
-
-        if (isSpanned) {
-            nextSpanTransition = ((Spanned) mText).nextSpanTransition(start, end, CharacterStyle.class);
-        }
-
-        for (int offset = start; offset < end; ) {
-            final int codepoint = Character.codePointAt(mText, offset);
-            charCount = Character.charCount(codepoint);
-
-            // Rotate Chinese, emoji, etc
-            if (isRotated(codepoint)) {
-                // save any old normal (nonrotated) runs
-                if (currentRunLength > 0) {
-                    mTextRuns.add(new TextRun(currentRunStart, currentRunLength, false, isSpanned));
-                }
-                // save this rotated character
-                mTextRuns.add(new TextRun(offset, charCount, true, isSpanned));
-                // reset normal run
-                currentRunStart = offset + charCount;
-                currentRunLength = 0;
-            } else {
-                // Mongolian, Latin, etc. Don't rotate.
-                if (isSpanned && nextSpanTransition == offset) {
-                    if (currentRunLength > 0) {
-                        mTextRuns.add(new TextRun(currentRunStart, currentRunLength, false, isSpanned));
-                    }
-                    // reset normal run
-                    currentRunStart = offset;
-                    currentRunLength = charCount;
-                    nextSpanTransition = ((Spanned) mText).nextSpanTransition(offset, end, CharacterStyle.class);
-                } else {
-                    currentRunLength += charCount;
+        mRunCount = 0;
+
+        int offset = start;
+        while (offset < end) {
+            final int rotatedStart = (itemizer != null)
+                    ? itemizer.nextRotated(offset, end)
+                    : MongolScriptItemizer.findNextRotated(text, offset, end);
+
+            // Mongolian, Latin, etc. Don't rotate. Split at span transitions.
+            while (offset < rotatedStart) {
+                int runEnd = rotatedStart;
+                if (isSpanned) {
+                    runEnd = ((Spanned) text).nextSpanTransition(offset, rotatedStart, CharacterStyle.class);
                 }
+                addRun(offset, runEnd - offset, false, isSpanned);
+                offset = runEnd;
             }
-            offset += charCount;
-        }
 
-        if (currentRunLength > 0) {
-            mTextRuns.add(new TextRun(currentRunStart, currentRunLength, false, isSpanned));
+            // Rotate Chinese, emoji, etc
+            if (rotatedStart < end) {
+                final int charCount = Character.charCount(Character.codePointAt(text, rotatedStart));
+                addRun(rotatedStart, charCount, true, isSpanned);
+                offset = rotatedStart + charCount;
+            }
         }
     }
 
-    private final static int MONGOL_QUICKCHECK_START = 0x1800;
-    private final static int MONGOL_QUICKCHECK_END = 0x2060;
-    private final static int KOREAN_JAMO_START = 0x1100;
-    private final static int KOREAN_JAMO_END = 0x11FF;
-    private final static int CJK_RADICAL_SUPPLEMENT_START = 0x2E80;
-    private final static int CJK_SYMBOLS_AND_PUNCTUATION_START = 0x3000;
-    private final static int CJK_SYMBOLS_AND_PUNCTUATION_MENKSOFT_END = 0x301C;
-    private final static int CIRCLE_NUMBER_21 = 0x3251;
-    private final static int CIRCLE_NUMBER_35 = 0x325F;
-    private final static int CIRCLE_NUMBER_36 = 0x32B1;
-    private final static int CIRCLE_NUMBER_50 = 0x32BF;
-    private final static int CJK_UNIFIED_IDEOGRAPHS_END = 0x9FFF;
-    private final static int HANGUL_SYLLABLES_START = 0xAC00;
-    private final static int HANGUL_JAMO_EXTENDED_B_END = 0xD7FF;
-    private final static int CJK_COMPATIBILITY_IDEOGRAPHS_START = 0xF900;
-    private final static int CJK_COMPATIBILITY_IDEOGRAPHS_END = 0xFAFF;
-    private static final int UNICODE_EMOJI_START = 0x1F000;
-
-    private static boolean isRotated(int codepoint) {
-
-        // Quick return: most Mongol chars should be in this range
-        if (codepoint >= MONGOL_QUICKCHECK_START && codepoint < MONGOL_QUICKCHECK_END) return false;
-
-        // Korean Jamo
-        if (codepoint < KOREAN_JAMO_START) return false; // latin, etc
-        if (codepoint <= KOREAN_JAMO_END) return true;
-
-        // Chinese and Japanese
-        if (codepoint >= CJK_RADICAL_SUPPLEMENT_START && codepoint <= CJK_UNIFIED_IDEOGRAPHS_END) {
-            // exceptions for font handled punctuation
-            if (codepoint >= CJK_SYMBOLS_AND_PUNCTUATION_START
-                    && codepoint <= CJK_SYMBOLS_AND_PUNCTUATION_MENKSOFT_END) return false;
-            if (codepoint >= CIRCLE_NUMBER_21 && codepoint <= CIRCLE_NUMBER_35) return false;
-            if (codepoint >= CIRCLE_NUMBER_36 && codepoint <= CIRCLE_NUMBER_50) return false;
-            return true;
-        }
-
-        // Korean Hangul
-        if (codepoint >= HANGUL_SYLLABLES_START && codepoint <= HANGUL_JAMO_EXTENDED_B_END)
-            return true;
-
-        // More Chinese
-        if (codepoint >= CJK_COMPATIBILITY_IDEOGRAPHS_START
-                && codepoint <= CJK_COMPATIBILITY_IDEOGRAPHS_END)
-            return true;
-
-        // TODO the Halfwidth and Fullwidth Forms (0xFF00--0xFFEF) might be worth rotating
-        // The problem is the Menksoft font already rotated a few (but not all) of them.
-
-        // Emoji
-        if (codepoint > UNICODE_EMOJI_START) return true;
-        // FIXME this will rotate some things that maybe shouldn't be rotated
-        // TODO there are a few other random emoji in other places as well
-
-        // all other codepoints
-        return false;
-    }
-
-
     /**
      * Renders the TextLine.
      *
@@ -229,30 +195,17 @@ class MongolTextLine {
         // top and bottom are the font metrics values in the normal
         // horizontal orientation of a text line.
 
-        boolean hasSpan = mText instanceof Spanned;
-
         c.save();
         c.translate(x, y);
         c.rotate(90);
 
-        for (TextRun run : mTextRuns) {
+        for (int run = 0; run < mRunCount; run++) {
 
-            int start = run.offset;
-            int end = run.offset + run.length;
-
-            TextPaint wp;
-            if (hasSpan) {
-                wp = mWorkPaint;
-                wp.set(mPaint);
-                CharacterStyle[] csSpans = ((Spanned) mText).getSpans(start, end, CharacterStyle.class);
-                for (CharacterStyle span : csSpans) {
-                    span.updateDrawState(wp);
-                }
-            } else {
-                wp = mPaint;
-            }
-
-            float width = (run.isRotated) ? run.measuredHeight : wp.measureText(mText, start, end);
+            int start = mRunOffsets[run];
+            int end = start + mRunLengths[run];
+            boolean isRotated = isRotated(run);
+            TextPaint wp = getRunPaint(run);
+            float width = (isRotated) ? mRunHeights[run] : mRunWidths[run];
 
             // background color
             if (wp.bgColor != 0) {
@@ -266,7 +219,8 @@ class MongolTextLine {
             }
 
             // "underline" (to the right of vertical text)
-            if (wp.isUnderlineText()) {
+            boolean isUnderlined = wp.isUnderlineText();
+            if (isUnderlined) {
                 wp.setUnderlineText(false);
 
                 Paint.Style previousStyle = wp.getStyle();
@@ -277,7 +231,7 @@ class MongolTextLine {
             }
 
             // text
-            if (run.isRotated) {
+            if (isRotated) {
                 c.save();
                 c.rotate(-90);
                 c.translate(-bottom, width - bottom);
@@ -287,6 +241,11 @@ class MongolTextLine {
                 c.drawText(mText, start, end, 0, wp.baselineShift, wp);
             }
 
+            // the resolved paint is reused for the next frame
+            if (isUnderlined) {
+                wp.setUnderlineText(true);
+            }
+
             // move into position for next text run
             c.translate(width, 0);
         }
@@ -294,41 +253,45 @@ class MongolTextLine {
         c.restore();
     }
 
-    RectF measure() {
+    /**
+     * @param outSize the measured size (in horizontal line orientation) is written here
+     * @return outSize
+     */
+    RectF measure(RectF outSize) {
 
         float widthSum = 0;
         float maxHeight = 0;
 
-        for (TextRun run : mTextRuns) {
-            if (run.isRotated) {
-                widthSum += run.measuredHeight;
-                maxHeight = Math.max(maxHeight, run.measuredWidth);
+        for (int run = 0; run < mRunCount; run++) {
+            if (isRotated(run)) {
+                widthSum += mRunHeights[run];
+                maxHeight = Math.max(maxHeight, mRunWidths[run]);
             } else {
-                widthSum += run.measuredWidth;
-                maxHeight = Math.max(maxHeight, run.measuredHeight);
+                widthSum += mRunWidths[run];
+                maxHeight = Math.max(maxHeight, mRunHeights[run]);
             }
         }
 
         // left, top, right, bottom (for horizontal line orientation)
-        return new RectF(0, 0, widthSum, maxHeight);
+        outSize.set(0, 0, widthSum, maxHeight);
+        return outSize;
     }
 
 
     int getOffsetForAdvance (float advance) {
-        boolean hasSpan = mText instanceof Spanned;
         int offset = 0;
         float oldWidth = 0;
         float newWidth = 0;
         // measure each run and compare sum to advance
-        for (TextRun run : mTextRuns) {
-            final int start = run.offset;
-            final int length = run.length;
-            newWidth += run.measuredWidth;
+        for (int run = 0; run < mRunCount; run++) {
+            final int start = mRunOffsets[run];
+            final int length = mRunLengths[run];
+            newWidth += mRunWidths[run];
             if (advance >= newWidth) {
                 oldWidth = newWidth;
                 offset += length;
             } else { // overshot so break up the run to the nearest offset
-                if (run.isRotated) {
+                if (isRotated(run)) {
                     // choose the closer offset
                     if (advance - oldWidth > newWidth - advance) {
                         offset++;
@@ -336,16 +299,8 @@ class MongolTextLine {
                     break;
                 }
 
-                TextPaint wp = mWorkPaint;
-                wp.set(mPaint);
-                if (hasSpan) {
-                    MetricAffectingSpan[] maSpans = ((Spanned) mText).getSpans(start, start + length, MetricAffectingSpan.class);
-                    for (MetricAffectingSpan span : maSpans) {
-                        span.updateDrawState(wp);
-                    }
-                }
-
-                float[] measuredWidth = new float[1];
+                TextPaint wp = getRunPaint(run);
+                float[] measuredWidth = mMeasuredWidth;
                 float maxWidth = advance - oldWidth;
                 int charactersMeasured = wp.breakText(mText, start, start + length, true, maxWidth, measuredWidth);
                 offset += charactersMeasured;
@@ -129,6 +129,12 @@ public class MongolTextStorage implements Editable {
         return mGlyphIndexes.get(unicodeIndex);
     }
 
+    // The glyphs of the whole word are replaced when part of it is edited,
+    // so this is where the glyphs can start to change.
+    int getGlyphIndexForWordStart(int unicodeIndex) {
+        return getGlyphIndexForUnicodeIndex(getMongolWordStart(unicodeIndex, mUnicodeText));
+    }
+
     int getUnicodeIndexForGlyphIndex(int glyphIndex) {
         // calculating the glyph index when needed rather than maintaining a second index
         int length = mUnicodeText.length();
@@ -13,6 +13,7 @@ import android.text.Spannable;
 import android.text.SpannableString;
 import android.text.SpannableStringBuilder;
 import android.text.TextPaint;
+import android.text.TextUtils;
 import android.text.method.MovementMethod;
 import android.text.style.ClickableSpan;
 import android.util.AttributeSet;
@@ -24,30 +25,47 @@ import android.view.View;
 import android.view.ViewParent;
 import android.view.ViewTreeObserver;
 
+import java.util.Arrays;
+
 // TODO how to speed this up
 // use array instead of mLinesInfo list
 // only rerender changed words
 // only redraw changed lines
 
-public class MongolTextView extends View  implements ViewTreeObserver.OnPreDrawListener {
+public class MongolTextView extends View  implements ViewTreeObserver.OnPreDrawListener,
+        ViewTreeObserver.OnScrollChangedListener {
 
     private final static int DEFAULT_FONT_SIZE_SP = 20;
     private static final int STICKY_WIDTH_UNDEFINED = -1;
+    private static final int SIZE_NOT_USED = -1;
     private static final String TAG = "MongolTextView";
+    private static final int ELLIPSIZE_NONE = 0; // android:ellipsize values
+    private static final int ELLIPSIZE_END = 3;
 
     private Context mContext;
     private int mTextColor;
     private float mTextSizePx;
     private Typeface mTypeface;
     private int mGravity = Gravity.TOP;
+    private int mMaxLines = Integer.MAX_VALUE;
+    private TextUtils.TruncateAt mEllipsize;
     private TextPaint mTextPaint;
     protected MongolLayout mLayout;
     protected MongolTextStorage mTextStorage;
 
     private int mStickyWidth = STICKY_WIDTH_UNDEFINED;
     private int[] mOnMeasureData = new int[6];
+    // the content size that the last onMeasure asked for
+    private int mLastDesiredWidth = SIZE_NOT_USED;
+    private int mLastDesiredHeight = SIZE_NOT_USED;
     private MovementMethod mMovementMethod;
 
+    // When a scrolling parent only shows part of this view, just a window of
+    // lines around the visible part is drawn (see onDraw and onScrollChanged).
+    private final Rect mVisibleRect = new Rect();
+    private int mDrawnLeft = Integer.MIN_VALUE;
+    private int mDrawnRight = Integer.MAX_VALUE;
+
 
     public MongolTextView(Context context) {
         this(context, null);
@@ -74,6 +92,10 @@ public class MongolTextView extends View  implements ViewTreeObserver.OnPreDrawL
         mTextSizePx = a.getDimensionPixelSize(R.styleable.MongolTextView_textSize, 0);
         mTextColor = a.getColor(R.styleable.MongolTextView_textColor, Color.BLACK);
         mGravity = a.getInteger(R.styleable.MongolTextView_gravity, Gravity.TOP);
+        mMaxLines = a.getInt(R.styleable.MongolTextView_android_maxLines, Integer.MAX_VALUE);
+        if (a.getInt(R.styleable.MongolTextView_android_ellipsize, ELLIPSIZE_NONE) == ELLIPSIZE_END) {
+            mEllipsize = TextUtils.TruncateAt.END;
+        }
         a.recycle();
 
         mContext = context;
@@ -95,7 +117,8 @@ public class MongolTextView extends View  implements ViewTreeObserver.OnPreDrawL
 
         // initialize the layout, but the height still needs to be set
         final CharSequence text = mTextStorage.getGlyphText();
-        mLayout = new MongolLayout(text, 0, text.length(), mTextPaint, 0, Gravity.TOP, 1, 0, false, Integer.MAX_VALUE);
+        mLayout = new MongolLayout(text, 0, text.length(), mTextPaint, 0, Gravity.TOP, 1, 0, false, mMaxLines);
+        mLayout.setEllipsize(mEllipsize);
 
     }
 
@@ -107,12 +130,6 @@ public class MongolTextView extends View  implements ViewTreeObserver.OnPreDrawL
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
 
-        // TODO don't need to calculate this if using sticky width?
-        // TODO pass in a limit where we can stop measuring?
-        final CharSequence text = mTextStorage.getGlyphText();
-        Rect desiredSizeNoPadding = MongolLayout.getDesiredSize(text, 0, text.length(), mTextPaint);
-        int desiredHeight = desiredSizeNoPadding.height() + getPaddingTop() + getPaddingBottom();
-
         int widthMode = MeasureSpec.getMode(widthMeasureSpec);
         int widthSize = MeasureSpec.getSize(widthMeasureSpec);
         int heightMode = MeasureSpec.getMode(heightMeasureSpec);
@@ -123,11 +140,19 @@ public class MongolTextView extends View  implements ViewTreeObserver.OnPreDrawL
 
         //Measure Height
         if (heightMode == MeasureSpec.EXACTLY) {
+            // no need to measure the whole text (important when there are maxLines)
             height = heightSize;
-        } else if (heightMode == MeasureSpec.AT_MOST) {
-            height = Math.min(desiredHeight, heightSize);
+            mLastDesiredHeight = SIZE_NOT_USED;
         } else {
-            height = desiredHeight;
+            // The layout caches its measurements until the text or paint changes
+            // so measuring again with the same specs doesn't do any work.
+            int desiredHeight = mLayout.getDesiredHeight() + getPaddingTop() + getPaddingBottom();
+            mLastDesiredHeight = desiredHeight;
+            if (heightMode == MeasureSpec.AT_MOST) {
+                height = Math.min(desiredHeight, heightSize);
+            } else {
+                height = desiredHeight;
+            }
         }
 
         // add padding calculations
@@ -143,6 +168,7 @@ public class MongolTextView extends View  implements ViewTreeObserver.OnPreDrawL
         }
 
         //Measure Width
+        mLastDesiredWidth = (widthMode == MeasureSpec.EXACTLY) ? SIZE_NOT_USED : desiredWidth;
         if (widthMode == MeasureSpec.EXACTLY) {
             width = widthSize;
         } else if (widthMode == MeasureSpec.AT_MOST) {
@@ -157,6 +183,17 @@ public class MongolTextView extends View  implements ViewTreeObserver.OnPreDrawL
         setMeasuredDimension(width, height);
     }
 
+    // MongolEditText uses this to skip requestLayout() when an edit doesn't
+    // change the size of the text
+    boolean hasContentSizeChanged() {
+        if (mStickyWidth != STICKY_WIDTH_UNDEFINED) return true;
+        if (mLastDesiredWidth != SIZE_NOT_USED
+                && mLayout.getWidth() + getPaddingLeft() + getPaddingRight() != mLastDesiredWidth)
+            return true;
+        return mLastDesiredHeight != SIZE_NOT_USED
+                && mLayout.getDesiredHeight() + getPaddingTop() + getPaddingBottom() != mLastDesiredHeight;
+    }
+
     private static final int OLD_WIDTH_SPEC_INDEX = 0;
     private static final int OLD_CHOSEN_HEIGHT_INDEX = 1;
     private static final int OLD_DESIRED_WIDTH_INDEX = 2;
@@ -212,20 +249,59 @@ public class MongolTextView extends View  implements ViewTreeObserver.OnPreDrawL
             mStickyWidth = STICKY_WIDTH_UNDEFINED;
         }
 
-        mOnMeasureData = new int[6];
+        Arrays.fill(mOnMeasureData, 0);
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
-        // draw the text on the canvas after adjusting for padding
         canvas.save();
+
+        // A long text in a HorizontalScrollView can be many screens wide. Only
+        // the visible part and a screen width to either side of it are drawn.
+        // The layout skips the lines that are outside of the clip bounds.
+        if (getLocalVisibleRect(mVisibleRect) && mVisibleRect.width() < getWidth()) {
+            final int margin = mVisibleRect.width();
+            mDrawnLeft = mVisibleRect.left - margin;
+            mDrawnRight = mVisibleRect.right + margin;
+            canvas.clipRect(mDrawnLeft, 0, mDrawnRight, getHeight());
+        } else {
+            mDrawnLeft = Integer.MIN_VALUE;
+            mDrawnRight = Integer.MAX_VALUE;
+        }
+
+        // draw the text on the canvas after adjusting for padding
         canvas.translate(getPaddingLeft(), getPaddingTop());
         mLayout.draw(canvas);
         canvas.restore();
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getViewTreeObserver().addOnScrollChangedListener(this);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        getViewTreeObserver().removeOnScrollChangedListener(this);
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public void onScrollChanged() {
+        // Draw the next window of lines before the visible part scrolls past the
+        // edge of the lines that have already been drawn.
+        if (mDrawnLeft == Integer.MIN_VALUE && mDrawnRight == Integer.MAX_VALUE) return;
+        if (!getLocalVisibleRect(mVisibleRect)) return;
+        final int threshold = mVisibleRect.width() / 2;
+        if (mVisibleRect.left < mDrawnLeft + threshold
+                || mVisibleRect.right > mDrawnRight - threshold) {
+            invalidate();
+        }
+    }
+
     @Override
     public boolean onTouchEvent(MotionEvent event) {
 
@@ -282,6 +358,7 @@ public class MongolTextView extends View  implements ViewTreeObserver.OnPreDrawL
     public void setTextColor(int color) {
         mTextColor = color;
         mTextPaint.setColor(mTextColor);
+        mLayout.invalidateDrawState();
         invalidate();
     }
 
@@ -343,6 +420,42 @@ public class MongolTextView extends View  implements ViewTreeObserver.OnPreDrawL
         }
     }
 
+    public int getMaxLines() {
+        return mMaxLines;
+    }
+
+    /**
+     * Only the first maxLines vertical lines are laid out and displayed.
+     *
+     * @param maxLines the maximum number of vertical lines (columns)
+     */
+    public void setMaxLines(int maxLines) {
+        if (mMaxLines != maxLines) {
+            mMaxLines = maxLines;
+            mLayout.setMaxLines(maxLines);
+            invalidate();
+            requestLayout();
+        }
+    }
+
+    public TextUtils.TruncateAt getEllipsize() {
+        return mEllipsize;
+    }
+
+    /**
+     * Shows a Mongolian ellipsis at the end of the last line if the text
+     * doesn't fit in maxLines.
+     *
+     * @param where TextUtils.TruncateAt.END or null for no ellipsis (the other values are not supported yet)
+     */
+    public void setEllipsize(TextUtils.TruncateAt where) {
+        if (mEllipsize != where) {
+            mEllipsize = where;
+            mLayout.setEllipsize(where);
+            invalidate();
+        }
+    }
+
     public int getOffsetForPosition (float x, float y) {
         if (getLayout() == null) return -1;
         final int line = getLineAtCoordinate(x); // vertical line
@@ -392,6 +505,13 @@ public class MongolTextView extends View  implements ViewTreeObserver.OnPreDrawL
         return mLayout;
     }
 
+    /**
+     * @return the paint used to draw the text (don't change it directly)
+     */
+    public TextPaint getPaint() {
+        return mTextPaint;
+    }
+
     // currently these only return the normal padding
     // no gravity is taken into account
     private int getTotalPaddingLeft() {
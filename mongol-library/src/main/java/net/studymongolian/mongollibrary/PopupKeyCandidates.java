@@ -7,6 +7,12 @@ import android.view.Gravity;
 import android.view.View;
 import android.view.ViewGroup;
 
+import java.util.ArrayList;
+
+// A keyboard keeps one instance of this view and shows it for every long press.
+// The candidate labels are kept in a pool and reused, so showing the popup
+// again doesn't create any views.
+
 class PopupKeyCandidates extends ViewGroup {
 
     private static final int LABEL_PADDING = 5; // dp
@@ -19,6 +25,9 @@ class PopupKeyCandidates extends ViewGroup {
     private int mHighlightColor = Color.DKGRAY;
     private int mTextColor = Color.BLACK;
     private String[] mCandidates;
+    private final ArrayList<MongolLabel> mLabelPool = new ArrayList<>();
+    private int mHighlightedIndex = -1;
+    private final int[] mLocation = new int[2];
 
     // this popup view will only be created programmatically
     public PopupKeyCandidates(Context context) {
@@ -31,15 +40,38 @@ class PopupKeyCandidates extends ViewGroup {
     }
 
     public void setDisplayCandidates(String[] displayCandidates, int textSize) {
+        setDisplayCandidates(displayCandidates, null, textSize);
+    }
+
+    /**
+     * @param displayCandidates the Unicode text of the candidates
+     * @param glyphs            the same text already shaped, or null to shape it here
+     * @param textSize          in SP
+     */
+    void setDisplayCandidates(String[] displayCandidates, String[] glyphs, int textSize) {
         int paddingPX = (int) (LABEL_PADDING * getResources().getDisplayMetrics().density);
-        for (String candidate : displayCandidates) {
+        int count = displayCandidates.length;
+        while (mLabelPool.size() < count) {
             MongolLabel label = new MongolLabel(mContext);
-            label.setText(candidate);
+            label.setPadding(paddingPX, paddingPX, paddingPX, paddingPX);
+            mLabelPool.add(label);
+        }
+        int childCount = getChildCount();
+        if (childCount > count) {
+            removeViews(count, childCount - count);
+        }
+        for (int i = 0; i < count; i++) {
+            MongolLabel label = mLabelPool.get(i);
+            String candidate = displayCandidates[i];
+            String glyph = (glyphs != null) ? glyphs[i] : KeyLabelCache.getGlyphs(candidate);
+            label.setText(candidate, glyph);
+            // this also undoes any shrinking from the last candidate that used the label
             label.setTextSize(textSize);
             label.setTextColor(mTextColor);
-            label.setPadding(paddingPX, paddingPX, paddingPX, paddingPX);
-            addView(label);
+            label.setBackgroundColor(Color.TRANSPARENT);
+            if (i >= childCount) addView(label);
         }
+        mHighlightedIndex = -1;
     }
 
     public void setHeight(int height) {
@@ -124,29 +156,28 @@ class PopupKeyCandidates extends ViewGroup {
     public void updateTouchPosition(int x) {
         // see which candidate is selected
         int highlightedIndex = getHighlightedCandidateIndex(x);
+        if (highlightedIndex == mHighlightedIndex) return;
         // highlight that candidate
-        int count = getChildCount();
-        for (int i = 0; i < count; i++) {
-            View child = getChildAt(i);
-            if (i == highlightedIndex) {
-                child.setBackgroundColor(mHighlightColor);
-            } else {
-                child.setBackgroundColor(Color.TRANSPARENT);
-            }
+        if (mHighlightedIndex >= 0 && mHighlightedIndex < getChildCount()) {
+            getChildAt(mHighlightedIndex).setBackgroundColor(Color.TRANSPARENT);
+        }
+        if (highlightedIndex >= 0) {
+            getChildAt(highlightedIndex).setBackgroundColor(mHighlightColor);
         }
+        mHighlightedIndex = highlightedIndex;
     }
 
     public int getHighlightedCandidateIndex(int x) {
+        // the children are laid out in a row, so only this view's location is needed
+        getLocationOnScreen(mLocation);
+        int touchX = x - mLocation[0];
         int count = getChildCount();
         for (int i = 0; i < count; i++) {
             View child = getChildAt(i);
-            int location[] = new int[2];
-            child.getLocationOnScreen(location);
-
-            int leftSide = location[0];
+            int leftSide = child.getLeft();
             int rightSide = leftSide + child.getMeasuredWidth();
 
-            if (leftSide < x && x < rightSide) return i;
+            if (leftSide < touchX && touchX < rightSide) return i;
         }
         return -1;
     }
@@ -0,0 +1,109 @@
+package net.studymongolian.mongollibrary;
+
+// The suffix popup only depends on the gender of the previous word and on
+// which kind of letter it ends with, so all of the possible popups are made
+// (and shaped) once here instead of on every long press.
+//
+// The suffix rules only treat a few kinds of final letters differently:
+// vowels, NA, the consonants B, G, D, R, S and all other chars. Each table
+// row is made from one letter of its kind using the rules in MongolCode.
+//
+// The candidates are shared, so don't change their arrays.
+
+class SuffixCandidates {
+
+    private static final int VOWEL = 0;
+    private static final int NA = 1;
+    private static final int BGDRS = 2;
+    private static final int OTHER = 3;
+
+    // a final letter of each kind
+    private static final char[] FINAL_CHARS = {
+            MongolCode.Uni.A,
+            MongolCode.Uni.NA,
+            MongolCode.Uni.BA,
+            MongolCode.Uni.MA
+    };
+
+    static final Keyboard.PopupCandidates NNBS_ONLY = create(
+            new String[]{String.valueOf(MongolCode.Uni.NNBS)});
+
+    private static final Keyboard.PopupCandidates[] MASCULINE = new Keyboard.PopupCandidates[FINAL_CHARS.length];
+    private static final Keyboard.PopupCandidates[] FEMININE = new Keyboard.PopupCandidates[FINAL_CHARS.length];
+
+    static {
+        for (int i = 0; i < FINAL_CHARS.length; i++) {
+            MASCULINE[i] = create(MongolCode.Gender.MASCULINE, FINAL_CHARS[i]);
+            FEMININE[i] = create(MongolCode.Gender.FEMININE, FINAL_CHARS[i]);
+        }
+    }
+
+    private SuffixCandidates() {
+    }
+
+    /**
+     * This only reads the tables, so it can be called on any thread.
+     *
+     * @param previousWord the Mongolian word before the cursor (may be empty)
+     * @return the suffix candidates to show after the word
+     */
+    static Keyboard.PopupCandidates forWord(String previousWord) {
+        if (previousWord.isEmpty()) return NNBS_ONLY;
+        // TODO if it is a number then return the right suffix for that
+        char lastChar = previousWord.charAt(previousWord.length() - 1);
+        MongolCode.Gender gender = MongolCode.getWordGender(previousWord);
+        if (gender == null) return NNBS_ONLY;
+        return get(gender, lastChar);
+    }
+
+    /**
+     * @param gender   the gender of the previous word (not null)
+     * @param lastChar the last char of the previous word
+     * @return the suffix candidates to show after the word
+     */
+    static Keyboard.PopupCandidates get(MongolCode.Gender gender, char lastChar) {
+        // the suffix rules only have a special case for masculine words
+        Keyboard.PopupCandidates[] table = (gender == MongolCode.Gender.MASCULINE) ? MASCULINE : FEMININE;
+        return table[getFinalCharKind(lastChar)];
+    }
+
+    private static int getFinalCharKind(char lastChar) {
+        if (MongolCode.isVowel(lastChar)) return VOWEL;
+        switch (lastChar) {
+            case MongolCode.Uni.NA:
+                return NA;
+            case MongolCode.Uni.BA:
+            case MongolCode.Uni.GA:
+            case MongolCode.Uni.DA:
+            case MongolCode.Uni.RA:
+            case MongolCode.Uni.SA:
+                return BGDRS;
+            default:
+                return OTHER;
+        }
+    }
+
+    private static Keyboard.PopupCandidates create(MongolCode.Gender gender, char lastChar) {
+        String[] unicode = new String[]{
+                "" + MongolCode.Uni.NNBS,
+                MongolCode.getSuffixUu(gender),
+                MongolCode.getSuffixYinUnU(gender, lastChar),
+                MongolCode.getSuffixYiI(lastChar),
+                MongolCode.getSuffixTuDu(gender, lastChar),
+                MongolCode.getSuffixBarIyar(gender, lastChar),
+                MongolCode.getSuffixBanIyan(gender, lastChar),
+                MongolCode.getSuffixAchaEche(gender),
+                MongolCode.getSuffixUd(gender)};
+        return create(unicode);
+    }
+
+    private static Keyboard.PopupCandidates create(String[] unicode) {
+        String[] glyphs = new String[unicode.length];
+        for (int i = 0; i < unicode.length; i++) {
+            glyphs[i] = MongolCode.INSTANCE.unicodeToMenksoft(unicode[i]);
+        }
+        Keyboard.PopupCandidates candidates = new Keyboard.PopupCandidates(unicode);
+        candidates.setGlyphs(glyphs);
+        return candidates;
+    }
+}
@@ -0,0 +1,102 @@
+package net.studymongolian.mongollibrary;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CursorTextCacheTest {
+
+    @Test
+    public void onCommit_trackedCursor_staysValid() throws Exception {
+        CursorTextCache cache = new CursorTextCache();
+        cache.onSelectionChanged(3, 3);
+        cache.set("abc", "def");
+        cache.beforeCommit("xy");
+        cache.onSelectionChanged(5, 5);
+        assertTrue(cache.isValid());
+        assertEquals("abcxy", cache.getTextBeforeCursor(10).toString());
+        assertEquals("de", cache.getTextAfterCursor(2).toString());
+        assertEquals('y', cache.getCharBeforeCursor());
+    }
+
+    // MongolEditText sends the selection update while the commit is running
+    @Test
+    public void beforeCommit_selectionUpdateDuringCommit_staysValid() throws Exception {
+        CursorTextCache cache = new CursorTextCache();
+        cache.onSelectionChanged(3, 3);
+        cache.set("abc", "def");
+        cache.beforeCommit("xy");
+        cache.onSelectionChanged(5, 5);
+        assertTrue(cache.isValid());
+        cache.beforeCommit("z");
+        cache.onSelectionChanged(6, 6);
+        assertTrue(cache.isValid());
+        assertEquals("abcxyz", cache.getTextBeforeCursor(10).toString());
+
+        // the cursor is moved somewhere else
+        cache.onSelectionChanged(8, 8);
+        assertFalse(cache.isValid());
+    }
+
+    @Test
+    public void beforeCommit_delayedSelectionUpdates_staysValid() throws Exception {
+        CursorTextCache cache = new CursorTextCache();
+        cache.onSelectionChanged(3, 3);
+        cache.set("abc", "def");
+        cache.beforeCommit("x");
+        cache.beforeCommit("y");
+        cache.beforeCommit("z");
+        cache.onSelectionChanged(4, 4);
+        cache.onSelectionChanged(6, 6); // the update for y was skipped
+        assertTrue(cache.isValid());
+        assertEquals("abcxyz", cache.getTextBeforeCursor(10).toString());
+
+        // an old position after the commits are done is a real move
+        cache.onSelectionChanged(5, 5);
+        assertFalse(cache.isValid());
+    }
+
+    @Test
+    public void beforeCommit_unexpectedSelectionUpdate_invalidates() throws Exception {
+        CursorTextCache cache = new CursorTextCache();
+        cache.onSelectionChanged(3, 3);
+        cache.set("abc", "def");
+        cache.beforeCommit("xy");
+        cache.onSelectionChanged(4, 4);
+        assertFalse(cache.isValid());
+    }
+
+    @Test
+    public void onSelectionChanged_unexpectedMove_invalidates() throws Exception {
+        CursorTextCache cache = new CursorTextCache();
+        cache.onSelectionChanged(3, 3);
+        cache.set("abc", "def");
+        cache.onSelectionChanged(1, 1);
+        assertFalse(cache.isValid());
+    }
+
+    @Test
+    public void onCommit_untrackedCursor_invalidates() throws Exception {
+        CursorTextCache cache = new CursorTextCache();
+        cache.set("abc", "def");
+        cache.beforeCommit("x");
+        assertFalse(cache.isValid());
+    }
+
+    @Test
+    public void set_longText_keepsContextLength() throws Exception {
+        CursorTextCache cache = new CursorTextCache();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2 * CursorTextCache.CONTEXT_LENGTH; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        cache.set(text, text);
+        String before = cache.getTextBeforeCursor(100).toString();
+        String after = cache.getTextAfterCursor(100).toString();
+        assertEquals(CursorTextCache.CONTEXT_LENGTH, before.length());
+        assertTrue(text.toString().endsWith(before));
+        assertTrue(text.toString().startsWith(after));
+    }
+}
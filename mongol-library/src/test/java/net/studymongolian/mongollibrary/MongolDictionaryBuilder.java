@@ -0,0 +1,211 @@
+package net.studymongolian.mongollibrary;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// This class makes the binary file that MongolDictionary reads. It is a build
+// tool, so it is kept with the tests rather than in the library. It doesn't
+// use anything from Android, so it can be run from the command line (from the
+// project root, with the Android SDK platform jar for compiling):
+//
+//     javac -cp $ANDROID_HOME/platforms/android-27/android.jar \
+//           -sourcepath mongol-library/src/main/java -d build/dictionary-tool \
+//           mongol-library/src/test/java/net/studymongolian/mongollibrary/MongolDictionaryBuilder.java
+//     java -cp build/dictionary-tool net.studymongolian.mongollibrary.MongolDictionaryBuilder words.txt mongol.dic
+//
+// Each line of the word list is a Unicode word, optionally followed by a tab
+// (or space) and its frequency. Words without a frequency get a frequency of 1.
+// Lines that start with # are ignored.
+
+public class MongolDictionaryBuilder {
+
+    private final Node mRoot = new Node();
+    private final Map<String, Word> mWords = new HashMap<>();
+
+    /**
+     * Adds a word. Adding the same word again adds to its frequency.
+     *
+     * @param word      the Unicode spelling (including any FVS and MVS)
+     * @param frequency how common the word is (only the order matters)
+     */
+    public void add(String word, int frequency) {
+        if (word.isEmpty()) return;
+        if (word.length() > 0xFFFF)
+            throw new IllegalArgumentException("MongolDictionaryBuilder: word is too long");
+        if (frequency < 0)
+            throw new IllegalArgumentException("MongolDictionaryBuilder: frequency " + frequency + " < 0");
+
+        Word entry = mWords.get(word);
+        if (entry != null) {
+            entry.frequency = (int) Math.min((long) entry.frequency + frequency, Integer.MAX_VALUE);
+            return;
+        }
+        entry = new Word(word, frequency);
+        mWords.put(word, entry);
+
+        String key = MongolDictionary.normalize(word);
+        Node node = mRoot;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            Node child = node.children.get(c);
+            if (child == null) {
+                child = new Node();
+                node.children.put(c, child);
+            }
+            node = child;
+        }
+        node.words.add(entry);
+    }
+
+    public int getWordCount() {
+        return mWords.size();
+    }
+
+    /**
+     * @return the dictionary file contents
+     */
+    public byte[] build() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeTo(bytes);
+        return bytes.toByteArray();
+    }
+
+    public void writeTo(OutputStream outputStream) throws IOException {
+        Writer writer = new Writer();
+        updateMaxFrequency(mRoot);
+        int rootOffset = writer.writeNode(mRoot);
+
+        DataOutputStream out = new DataOutputStream(outputStream);
+        out.writeInt(MongolDictionary.MAGIC);
+        out.writeInt(MongolDictionary.VERSION);
+        out.writeInt(rootOffset);
+        out.writeInt(mWords.size());
+        writer.bytes.writeTo(out);
+        out.flush();
+    }
+
+    private static int updateMaxFrequency(Node node) {
+        int max = 0;
+        for (Word word : node.words) {
+            max = Math.max(max, word.frequency);
+        }
+        for (Node child : node.children.values()) {
+            max = Math.max(max, updateMaxFrequency(child));
+        }
+        node.maxFrequency = max;
+        return max;
+    }
+
+    // Writes the nodes after their words and children, so that every offset
+    // is already known when it is written.
+    private static class Writer {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        private int offset() {
+            return MongolDictionary.HEADER_SIZE + out.size();
+        }
+
+        int writeNode(Node node) throws IOException {
+            if (node.children.size() > 0xFFFF || node.words.size() > 0xFFFF)
+                throw new IllegalStateException("MongolDictionaryBuilder: too many words or children");
+
+            int[] childOffsets = new int[node.children.size()];
+            int i = 0;
+            for (Node child : node.children.values()) {
+                childOffsets[i++] = writeNode(child);
+            }
+
+            int wordsOffset = 0;
+            if (!node.words.isEmpty()) {
+                wordsOffset = offset();
+                Collections.sort(node.words, BY_FREQUENCY);
+                for (Word word : node.words) {
+                    out.writeInt(word.frequency);
+                    out.writeShort(word.text.length());
+                    out.writeChars(word.text);
+                }
+            }
+
+            int nodeOffset = offset();
+            out.writeInt(node.maxFrequency);
+            out.writeInt(wordsOffset);
+            out.writeShort(node.words.size());
+            out.writeShort(node.children.size());
+            i = 0;
+            for (char label : node.children.keySet()) {
+                out.writeChar(label);
+                out.writeInt(childOffsets[i++]);
+            }
+            return nodeOffset;
+        }
+    }
+
+    private static final Comparator<Word> BY_FREQUENCY = new Comparator<Word>() {
+        @Override
+        public int compare(Word a, Word b) {
+            if (a.frequency != b.frequency) return a.frequency > b.frequency ? -1 : 1;
+            return a.text.compareTo(b.text);
+        }
+    };
+
+    private static class Node {
+        final TreeMap<Character, Node> children = new TreeMap<>();
+        final List<Word> words = new ArrayList<>(1);
+        int maxFrequency;
+    }
+
+    private static class Word {
+        final String text;
+        int frequency;
+
+        Word(String text, int frequency) {
+            this.text = text;
+            this.frequency = frequency;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: MongolDictionaryBuilder <word list> <output file>");
+            System.exit(1);
+        }
+
+        MongolDictionaryBuilder builder = new MongolDictionaryBuilder();
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(args[0]), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] parts = line.split("[\t ]+");
+                int frequency = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+                builder.add(parts[0], frequency);
+            }
+        } finally {
+            reader.close();
+        }
+
+        FileOutputStream out = new FileOutputStream(args[1]);
+        try {
+            builder.writeTo(out);
+        } finally {
+            out.close();
+        }
+        System.out.println(builder.getWordCount() + " words written to " + args[1]);
+    }
+}
@@ -0,0 +1,69 @@
+package net.studymongolian.mongollibrary;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MongolDictionaryTest {
+
+    private static final String BICHIG = "\u182A\u1822\u1834\u1822\u182D";
+    private static final String BICHIGECHI = "\u182A\u1822\u1834\u1822\u182D\u1821\u1834\u1822";
+    private static final String BI = "\u182A\u1822";
+    private static final String BAGSHI = "\u182A\u1820\u182D\u1830\u1822";
+    private static final String NAIMA = "\u1828\u1820\u1822\u182E\u1820";
+    private static final String NAIMA_MVS = "\u1828\u1820\u1822\u182E\u180E\u1820";
+    private static final String NA_FVS1 = "\u1828\u180B";
+
+    private MongolDictionary build(MongolDictionaryBuilder builder) throws Exception {
+        return new MongolDictionary(ByteBuffer.wrap(builder.build()));
+    }
+
+    @Test
+    public void getSuggestions_prefix_rankedByFrequency() throws Exception {
+        MongolDictionaryBuilder builder = new MongolDictionaryBuilder();
+        builder.add(BICHIG, 50);
+        builder.add(BICHIGECHI, 70);
+        builder.add(BI, 10);
+        builder.add(BAGSHI, 100);
+        MongolDictionary dictionary = build(builder);
+
+        String[] expected = {BICHIGECHI, BICHIG, BI};
+        assertArrayEquals(expected, dictionary.getSuggestions(BI, 10));
+        assertArrayEquals(new String[]{BICHIGECHI}, dictionary.getSuggestions(BI, 1));
+        assertEquals(4, dictionary.getWordCount());
+    }
+
+    @Test
+    public void getSuggestions_noMatch_empty() throws Exception {
+        MongolDictionaryBuilder builder = new MongolDictionaryBuilder();
+        builder.add(BICHIG, 50);
+        MongolDictionary dictionary = build(builder);
+
+        assertEquals(0, dictionary.getSuggestions(NAIMA, 10).length);
+    }
+
+    @Test
+    public void getSuggestions_ignoresFvsAndMvs() throws Exception {
+        MongolDictionaryBuilder builder = new MongolDictionaryBuilder();
+        builder.add(NAIMA_MVS, 5);
+        MongolDictionary dictionary = build(builder);
+
+        assertArrayEquals(new String[]{NAIMA_MVS}, dictionary.getSuggestions(NAIMA, 10));
+        assertArrayEquals(new String[]{NAIMA_MVS}, dictionary.getSuggestions(NA_FVS1, 10));
+        assertEquals(5, dictionary.getFrequency(NAIMA));
+    }
+
+    @Test
+    public void add_sameWordTwice_addsFrequency() throws Exception {
+        MongolDictionaryBuilder builder = new MongolDictionaryBuilder();
+        builder.add(BICHIG, 3);
+        builder.add(BICHIG, 4);
+        MongolDictionary dictionary = build(builder);
+
+        assertEquals(7, dictionary.getFrequency(BICHIG));
+        assertEquals(0, dictionary.getFrequency(BI));
+    }
+}
@@ -0,0 +1,105 @@
+package net.studymongolian.mongollibrary;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MongolLineBreakerTest {
+
+    private static List<String> getSegments(CharSequence text) {
+        List<String> segments = new ArrayList<>();
+        MongolLineBreaker breaker = new MongolLineBreaker();
+        breaker.setText(text);
+        int start = breaker.first();
+        for (int end = breaker.next(); end != MongolLineBreaker.DONE; end = breaker.next()) {
+            segments.add(text.subSequence(start, end).toString());
+            start = end;
+        }
+        return segments;
+    }
+
+    @Test
+    public void next_emptyString_returnsDone() throws Exception {
+        MongolLineBreaker breaker = new MongolLineBreaker();
+        breaker.setText("");
+        assertEquals(0, breaker.first());
+        assertEquals(MongolLineBreaker.DONE, breaker.next());
+    }
+
+    @Test
+    public void next_spaces_hangAtEndOfSegment() throws Exception {
+        List<String> result = getSegments("abc def  ghi");
+        assertEquals(3, result.size());
+        assertEquals("abc ", result.get(0));
+        assertEquals("def  ", result.get(1));
+        assertEquals("ghi", result.get(2));
+    }
+
+    @Test
+    public void next_newLine_isIncludedInSegment() throws Exception {
+        List<String> result = getSegments("abc\n\ndef");
+        assertEquals(3, result.size());
+        assertEquals("abc\n", result.get(0));
+        assertEquals("\n", result.get(1));
+        assertEquals("def", result.get(2));
+    }
+
+    @Test
+    public void next_nnbs_gluesSuffixToWord() throws Exception {
+        String unicode = "\u182E\u1823\u1829\u182D\u1823\u182F" + MongolCode.Suffix.UN + " \u182A\u1822\u1834\u1822\u182D";
+        String glyphs = MongolCode.INSTANCE.unicodeToMenksoft(unicode);
+        List<String> result = getSegments(glyphs);
+        assertEquals(2, result.size());
+        assertTrue(result.get(0).indexOf(MongolCode.Uni.NNBS) > 0);
+    }
+
+    @Test
+    public void next_menksoftComma_noBreakBefore() throws Exception {
+        String text = "\uE264 \uE264" + MongolCode.Glyph.COMMA + "\uE264";
+        List<String> result = getSegments(text);
+        assertEquals(3, result.size());
+        assertEquals("\uE264" + MongolCode.Glyph.COMMA, result.get(1));
+        assertEquals("\uE264", result.get(2));
+    }
+
+    @Test
+    public void next_menksoftLeftParenthesis_noBreakAfter() throws Exception {
+        String text = "\uE264 " + MongolCode.Glyph.LEFT_PARENTHESIS + "\uE264";
+        List<String> result = getSegments(text);
+        assertEquals(2, result.size());
+        assertEquals(MongolCode.Glyph.LEFT_PARENTHESIS + "\uE264", result.get(1));
+    }
+
+    @Test
+    public void next_chinese_breaksAroundEachCharacter() throws Exception {
+        List<String> result = getSegments("abc\u4E2D\u6587");
+        assertEquals(3, result.size());
+        assertEquals("abc", result.get(0));
+        assertEquals("\u4E2D", result.get(1));
+        assertEquals("\u6587", result.get(2));
+    }
+
+    @Test
+    public void next_emojiSurrogatePair_notSplit() throws Exception {
+        String emoji = "\uD83D\uDE00";
+        String variationSelector = "\uFE0F";
+        List<String> result = getSegments(emoji + emoji + variationSelector);
+        assertEquals(2, result.size());
+        assertEquals(emoji, result.get(0));
+        assertEquals(emoji + variationSelector, result.get(1));
+    }
+
+    @Test
+    public void setText_range_onlyBreaksInRange() throws Exception {
+        String text = "abc def\nghi";
+        MongolLineBreaker breaker = new MongolLineBreaker();
+        breaker.setText(text, 4, 8);
+        assertEquals(4, breaker.first());
+        assertEquals(8, breaker.next());
+        assertEquals(MongolLineBreaker.DONE, breaker.next());
+    }
+}
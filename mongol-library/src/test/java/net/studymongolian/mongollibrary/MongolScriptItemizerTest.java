@@ -0,0 +1,61 @@
+package net.studymongolian.mongollibrary;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MongolScriptItemizerTest {
+
+    @Test
+    public void getCharClass_mongolian_isMongolian() throws Exception {
+        assertEquals(MongolScriptItemizer.MONGOLIAN, MongolScriptItemizer.getCharClass(MongolCode.Uni.A));
+        assertEquals(MongolScriptItemizer.MONGOLIAN, MongolScriptItemizer.getCharClass(MongolCode.Uni.NNBS));
+        assertEquals(MongolScriptItemizer.MONGOLIAN, MongolScriptItemizer.getCharClass(0xE264));
+    }
+
+    @Test
+    public void getCharClass_latinAndSpace() throws Exception {
+        assertEquals(MongolScriptItemizer.OTHER, MongolScriptItemizer.getCharClass('a'));
+        assertEquals(MongolScriptItemizer.SPACE, MongolScriptItemizer.getCharClass(' '));
+        assertEquals(MongolScriptItemizer.SPACE, MongolScriptItemizer.getCharClass('\n'));
+    }
+
+    @Test
+    public void isRotated_cjkAndEmoji_true() throws Exception {
+        assertTrue(MongolScriptItemizer.isRotated(0x4E2D));
+        assertTrue(MongolScriptItemizer.isRotated(0xAC00));
+        assertTrue(MongolScriptItemizer.isRotated(0x1F600));
+        assertEquals(MongolScriptItemizer.EMOJI, MongolScriptItemizer.getCharClass(0x1F600));
+    }
+
+    @Test
+    public void isRotated_menksoftCjkPunctuation_false() throws Exception {
+        assertFalse(MongolScriptItemizer.isRotated(0x3001));
+        assertFalse(MongolScriptItemizer.isRotated(0x3251));
+        assertFalse(MongolScriptItemizer.isRotated(0x1F000));
+    }
+
+    @Test
+    public void nextRotated_findsEachRotatedCodePoint() throws Exception {
+        String text = "ab\u4E2Dc\uD83D\uDE00d";
+        MongolScriptItemizer itemizer = new MongolScriptItemizer();
+        itemizer.setText(text);
+        assertEquals(2, itemizer.nextRotated(0, text.length()));
+        assertEquals(4, itemizer.nextRotated(3, text.length()));
+        assertEquals(text.length(), itemizer.nextRotated(6, text.length()));
+        assertEquals(2, itemizer.nextRotated(0, 2));
+    }
+
+    @Test
+    public void nextRotated_sameAsFindNextRotated() throws Exception {
+        String text = "abc \u4E2D\u6587 def\n\uD83D\uDE00";
+        MongolScriptItemizer itemizer = new MongolScriptItemizer();
+        itemizer.setText(text);
+        for (int i = 0; i < text.length(); i++) {
+            assertEquals(MongolScriptItemizer.findNextRotated(text, i, text.length()),
+                    itemizer.nextRotated(i, text.length()));
+        }
+    }
+}